@@ -0,0 +1,162 @@
+package desempenho;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.ChunkedCipher;
+import auxiliar.CipherSuite;
+
+/*
+    Mede a criptografia e a descriptografia de uma transferência grande (classe ChunkedCipher), da memória para a memória, sem o socket:
+        - encrypt / decrypt: o fluxo inteiro em blocos de 64 KiB.
+    O parâmetro parallelism é o número de threads do ForkJoinPool; com 1 os blocos são processados um por vez na thread do teste, como
+    antes do modo paralelo. Com o modo Throughput em operações por segundo, a vazão em bytes é ops/s × streamSize, e deve crescer com o
+    paralelismo até o número de núcleos do processador.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkedCipherBenchmark {
+    @Param({ "AES-128-GCM", "CHACHA20-POLY1305" })
+    public String cipherSuiteName;
+
+    @Param({ "67108864" })
+    public int streamSize;
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    private CipherSuite cipherSuite;
+    private SecretKey sessionKey;
+    private byte[] salt;
+    private ByteBuffer plaintext;
+    private ByteBuffer[] encryptedChunks;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        cipherSuite = CipherSuite.fromName(cipherSuiteName);
+        byte[] keyBytes = new byte[cipherSuite.getKeyLength()];
+        random.nextBytes(keyBytes);
+        sessionKey = cipherSuite.keyFromBytes(keyBytes);
+        salt = ChunkedCipher.newSalt();
+
+        byte[] bytes = new byte[streamSize];
+        random.nextBytes(bytes);
+        plaintext = ByteBuffer.wrap(bytes);
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+        // Blocos criptografados usados no teste de descriptografia
+        int chunkCount = streamSize / ChunkedCipher.DEFAULT_CHUNK_SIZE + 1;
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        int[] count = { 0 };
+        newCipher().encrypt(source(), (chunk, last) -> {
+            ByteBuffer copy = ByteBuffer.allocate(chunk.remaining());
+            copy.put(chunk).flip();
+            chunks[count[0]++] = copy;
+        });
+        encryptedChunks = chunks;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private ChunkedCipher newCipher() throws Exception {
+        return new ChunkedCipher(cipherSuite, sessionKey, salt, ChunkedCipher.DEFAULT_CHUNK_SIZE);
+    }
+
+    // Fluxo de leitura sobre o conteúdo em memória, sem copiar o array
+    private ReadableByteChannel source() {
+        ByteBuffer remaining = plaintext.duplicate();
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer target) {
+                if (!remaining.hasRemaining())
+                    return -1;
+                int length = Math.min(target.remaining(), remaining.remaining());
+                target.put(remaining.slice().limit(length));
+                remaining.position(remaining.position() + length);
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Destino que apenas descarta os bytes descriptografados
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer source) {
+            int length = source.remaining();
+            source.position(source.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Benchmark
+    public long encrypt() throws Exception {
+        long[] checksum = { 0 };
+        ChunkedCipher.ChunkSink sink = (chunk, last) -> checksum[0] += chunk.get(chunk.limit() - 1);
+        ChunkedCipher chunkedCipher = newCipher();
+        if (pool != null)
+            chunkedCipher.encrypt(source(), sink, pool);
+        else
+            chunkedCipher.encrypt(source(), sink);
+        return checksum[0];
+    }
+
+    @Benchmark
+    public long decrypt() throws Exception {
+        ChunkedCipher chunkedCipher = newCipher();
+        long total = 0;
+        for (int i = 0; i < encryptedChunks.length; i++) {
+            ByteBuffer chunk = encryptedChunks[i].duplicate();
+            boolean last = i == encryptedChunks.length - 1;
+            total += pool != null ? chunkedCipher.decryptChunk(chunk, last, DISCARD, pool) : chunkedCipher.decryptChunk(chunk, last, DISCARD);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,66 @@
+package desempenho;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.CipherSuite;
+
+/*
+    Mede a criptografia e a descriptografia de mensagens em bytes (sem Base64) com cada cifra suportada, para mensagens de 16 B a 16 MB.
+    A vazão em bytes por segundo é a quantidade de operações por segundo multiplicada pelo tamanho da mensagem.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CipherBenchmark {
+    @Param({ "AES-128-GCM", "AES-256-GCM", "CHACHA20-POLY1305", "DES" })
+    public String cipherSuiteName;
+
+    @Param({ "16", "1024", "65536", "1048576", "16777216" })
+    public int payloadSize;
+
+    private CipherSuite cipherSuite;
+    private SecretKey secretKey;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        cipherSuite = CipherSuite.fromName(cipherSuiteName);
+        byte[] keyBytes = new byte[cipherSuite.getKeyLength()];
+        random.nextBytes(keyBytes);
+        secretKey = cipherSuite.keyFromBytes(keyBytes);
+
+        plaintext = new byte[payloadSize];
+        random.nextBytes(plaintext);
+        ciphertext = cipherSuite.encrypt(plaintext, secretKey);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return cipherSuite.encrypt(plaintext, secretKey);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return cipherSuite.decrypt(ciphertext, secretKey);
+    }
+}
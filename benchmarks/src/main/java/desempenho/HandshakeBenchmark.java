@@ -0,0 +1,77 @@
+package desempenho;
+
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.KeyExchanges;
+import auxiliar.KeyPairPool;
+import conexao.ClientSession;
+import conexao.ServerContext;
+import conexao.ServerEngine;
+import conexao.SessionCache;
+
+/*
+    Mede uma sessão completa entre o cliente e o servidor pela interface de loopback: conexão, troca de chaves (ou retomada de sessão),
+    envio de uma mensagem criptografada e encerramento. O servidor é o mesmo ServerEngine usado pelo TCPServer, com os pools de chaves e
+    o cache de sessões; o cliente é o ClientSession usado pelo TCPClient.
+
+    Com resume = true, a partir da segunda sessão o cliente apresenta o bilhete da sessão anterior e a troca de chaves é evitada.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+    private static final String SERVER_ADDRESS = "127.0.0.1";
+
+    @Param({ "false", "true" })
+    public boolean resume;
+
+    private Map<String, KeyPairPool> keyPairPools;
+    private ServerEngine engine;
+    private int port;
+
+    @Setup
+    public void setup() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        keyPairPools = KeyExchanges.createPools(8, 32, 1);
+        keyPairPools.values().forEach(KeyPairPool::start);
+        engine = new ServerEngine(port, 64, new ServerContext(keyPairPools, new SessionCache(10000, 10 * 60 * 1000, 16)));
+        engine.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown(5000);
+        keyPairPools.values().forEach(KeyPairPool::shutdown);
+    }
+
+    @Benchmark
+    public String session() throws Exception {
+        try (ClientSession session = new ClientSession(SERVER_ADDRESS, port)) {
+            session.setResumptionEnabled(resume);
+            session.connect();
+            session.handshake(port);
+            return session.send("ping");
+        }
+    }
+}
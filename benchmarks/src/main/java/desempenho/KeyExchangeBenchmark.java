@@ -0,0 +1,75 @@
+package desempenho;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.CipherSuite;
+import auxiliar.KeyExchange;
+import auxiliar.KeyExchanges;
+
+/*
+    Mede as etapas da troca de chaves de cada algoritmo suportado:
+        - generateKeyPair: geração de um par de chaves efêmero (o trabalho feito em segundo plano pelo KeyPairPool).
+        - decodePublicKey: reconstrução da chave pública recebida do outro lado (X.509).
+        - generateSharedSecret: acordo de chaves e derivação da chave da sessão.
+        - deriveSessionKey: apenas a derivação da chave da sessão (HKDF) a partir do segredo bruto.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyExchangeBenchmark {
+    @Param({ KeyExchanges.X25519, KeyExchanges.ECDH_P256, KeyExchanges.DH })
+    public String keyExchangeName;
+
+    private KeyExchange keyExchange;
+    private PublicKey peerPublicKey;
+    private byte[] peerPublicKeyBytes;
+    private byte[] rawSecret;
+
+    @Setup
+    public void setup() throws Exception {
+        keyExchange = KeyExchanges.create(keyExchangeName, null);
+        KeyExchange peer = KeyExchanges.create(keyExchangeName, null);
+        peerPublicKey = peer.getPublicKey();
+        peerPublicKeyBytes = peerPublicKey.getEncoded();
+        rawSecret = keyExchange.generateRawSecret(peerPublicKey);
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() throws Exception {
+        return KeyExchanges.generateKeyPair(keyExchangeName);
+    }
+
+    @Benchmark
+    public PublicKey decodePublicKey() throws Exception {
+        return keyExchange.decodePublicKey(peerPublicKeyBytes);
+    }
+
+    @Benchmark
+    public SecretKey generateSharedSecret() throws Exception {
+        return keyExchange.generateSharedSecret(peerPublicKey);
+    }
+
+    @Benchmark
+    public SecretKey deriveSessionKey() throws Exception {
+        return CipherSuite.AES_128_GCM.deriveKey(rawSecret, keyExchangeName);
+    }
+}
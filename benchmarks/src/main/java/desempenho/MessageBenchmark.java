@@ -0,0 +1,101 @@
+package desempenho;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.CipherSuite;
+import auxiliar.DiffieHellmanDES;
+
+/*
+    Mede os métodos de texto, que recebem e retornam Strings em Base64:
+        - desEncryptMessage / desDecryptMessage: os métodos encryptMessage e decryptMessage originais do DiffieHellmanDES.
+        - aesEncryptMessage / aesDecryptMessage: os mesmos métodos de texto com AES-128-GCM (classe CipherSuite).
+        - base64Encode / base64Decode: apenas a codificação Base64, para separar o seu custo do custo da cifra.
+    Comparados com o CipherBenchmark (bytes, sem Base64), mostram o custo da codificação em texto usada antes do protocolo binário.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBenchmark {
+    @Param({ "16", "1024", "65536", "1048576", "16777216" })
+    public int payloadSize;
+
+    private DiffieHellmanDES des;
+    private SecretKey desKey;
+    private SecretKey aesKey;
+    private String message;
+    private byte[] bytes;
+    private String encoded;
+    private String desEncrypted;
+    private String aesEncrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        des = new DiffieHellmanDES();
+        desKey = DiffieHellmanDES.deriveSecretKey(secret);
+        aesKey = CipherSuite.AES_128_GCM.keyFromBytes(Arrays.copyOf(secret, CipherSuite.AES_128_GCM.getKeyLength()));
+
+        char[] characters = new char[payloadSize];
+        for (int i = 0; i < payloadSize; i++)
+            characters[i] = (char) ('a' + random.nextInt(26));
+        message = new String(characters);
+
+        bytes = new byte[payloadSize];
+        random.nextBytes(bytes);
+        encoded = Base64.getEncoder().encodeToString(bytes);
+        desEncrypted = des.encryptMessage(message, desKey);
+        aesEncrypted = CipherSuite.AES_128_GCM.encryptMessage(message, aesKey);
+    }
+
+    @Benchmark
+    public String desEncryptMessage() throws Exception {
+        return des.encryptMessage(message, desKey);
+    }
+
+    @Benchmark
+    public String desDecryptMessage() throws Exception {
+        return des.decryptMessage(desEncrypted, desKey);
+    }
+
+    @Benchmark
+    public String aesEncryptMessage() throws Exception {
+        return CipherSuite.AES_128_GCM.encryptMessage(message, aesKey);
+    }
+
+    @Benchmark
+    public String aesDecryptMessage() throws Exception {
+        return CipherSuite.AES_128_GCM.decryptMessage(aesEncrypted, aesKey);
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.getDecoder().decode(encoded);
+    }
+}
@@ -0,0 +1,107 @@
+package desempenho;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auxiliar.CipherSuite;
+import auxiliar.SessionCipher;
+
+/*
+    Mede a criptografia e a descriptografia de mensagens com a classe SessionCipher, que reaproveita os objetos Cipher e os buffers da sessão:
+        - encryptText / decryptText: mensagem de texto codificada e decodificada em UTF-8, como no envio das mensagens da sessão.
+        - encryptBuffer / decryptBuffer: bytes entre ByteBuffers fornecidos pelo teste, comuns ou diretos (parâmetro direct).
+    Comparados com o CipherBenchmark (arrays novos e um Cipher por chamada), mostram o ganho em operações por segundo e, com -prof gc, a
+    memória alocada por mensagem (gc.alloc.rate.norm).
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionCipherBenchmark {
+    @Param({ "AES-128-GCM", "CHACHA20-POLY1305", "DES" })
+    public String cipherSuiteName;
+
+    @Param({ "16", "1024", "65536" })
+    public int payloadSize;
+
+    @Param({ "false", "true" })
+    public boolean direct;
+
+    private SessionCipher sessionCipher;
+    private String message;
+    private ByteBuffer plaintext;
+    private ByteBuffer ciphertext;
+    private ByteBuffer textCiphertext;
+    private ByteBuffer output;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        CipherSuite cipherSuite = CipherSuite.fromName(cipherSuiteName);
+        byte[] keyBytes = new byte[cipherSuite.getKeyLength()];
+        random.nextBytes(keyBytes);
+        SecretKey secretKey = cipherSuite.keyFromBytes(keyBytes);
+        sessionCipher = new SessionCipher(cipherSuite, secretKey);
+
+        char[] characters = new char[payloadSize];
+        for (int i = 0; i < payloadSize; i++)
+            characters[i] = (char) ('a' + random.nextInt(26));
+        message = new String(characters);
+
+        byte[] bytes = new byte[payloadSize];
+        random.nextBytes(bytes);
+        int encryptedLength = sessionCipher.encryptedLength(payloadSize);
+        plaintext = allocate(payloadSize).put(bytes).flip();
+        output = allocate(encryptedLength);
+        ciphertext = allocate(encryptedLength);
+        sessionCipher.encrypt(plaintext.duplicate(), ciphertext);
+        ciphertext.flip();
+        textCiphertext = allocate(encryptedLength);
+        sessionCipher.encrypt(message, textCiphertext);
+        textCiphertext.flip();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Benchmark
+    public int encryptText() throws Exception {
+        output.clear();
+        return sessionCipher.encrypt(message, output);
+    }
+
+    @Benchmark
+    public int decryptText() throws Exception {
+        return sessionCipher.decryptText(textCiphertext.duplicate()).length();
+    }
+
+    @Benchmark
+    public int encryptBuffer() throws Exception {
+        output.clear();
+        return sessionCipher.encrypt(plaintext.duplicate(), output);
+    }
+
+    @Benchmark
+    public int decryptBuffer() throws Exception {
+        output.clear();
+        return sessionCipher.decrypt(ciphertext.duplicate(), output);
+    }
+}
@@ -0,0 +1,24 @@
+#!/bin/sh
+# Inicia o servidor no modo daemon. Os argumentos são repassados ao servidor, por exemplo:
+#   ./servidor.sh --config=servidor.properties --porta=6000
+#
+# Na primeira execução, a JVM grava ao sair (depois do SIGTERM) um arquivo com as classes carregadas (AppCDS); nas seguintes, as classes
+# são lidas desse arquivo já processadas, o que reduz o tempo de inicialização. Apague o servidor.jsa depois de recompilar o projeto.
+cd "$(dirname "$0")" || exit 1
+
+JAR=app/target/criptografia-e-redes-1.0-SNAPSHOT.jar
+ARCHIVE=servidor.jsa
+
+if [ ! -f "$JAR" ]; then
+    echo "ERRO! $JAR não encontrado. Compile o projeto com: mvn -B package" >&2
+    exit 1
+fi
+
+if [ -f "$ARCHIVE" ]; then
+    CDS="-XX:SharedArchiveFile=$ARCHIVE -Xshare:auto"
+else
+    CDS="-XX:ArchiveClassesAtExit=$ARCHIVE"
+fi
+
+# exec substitui o shell pela JVM, para que o SIGTERM chegue diretamente ao servidor
+exec java $CDS $JAVA_OPTS -jar "$JAR" --daemon "$@"
@@ -0,0 +1,334 @@
+package auxiliar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/*
+    A classe ChunkedCipher criptografa e descriptografa fluxos de dados de qualquer tamanho (arquivos, por exemplo) em blocos de tamanho fixo.
+
+    O método encryptMessage do DiffieHellmanDES precisa da mensagem inteira em memória, então o uso de memória cresce com o tamanho da
+    mensagem. Aqui os dados são lidos, criptografados e enviados um bloco por vez, reaproveitando os mesmos buffers, e o uso de memória fica
+    constante independentemente do tamanho do fluxo.
+
+    Funcionamento:
+        1- Cada transferência usa uma chave própria, derivada da chave da sessão com HKDF e um salt aleatório de 16 bytes enviado ao outro lado.
+        2- Cada bloco é criptografado com a cifra autenticada da sessão (AES-GCM ou ChaCha20-Poly1305). O nonce é o número do bloco, que
+           nunca se repete dentro da transferência.
+        3- O número do bloco e a indicação de último bloco entram como dados autenticados (AAD). Assim, blocos trocados de ordem, repetidos,
+           removidos ou um fluxo truncado são detectados na descriptografia.
+
+    Como cada bloco tem o seu próprio nonce e a sua própria etiqueta de autenticação, os blocos são independentes entre si e podem ser
+    criptografados e descriptografados em paralelo. Os métodos que recebem um ForkJoinPool mantêm vários blocos em processamento ao mesmo
+    tempo (até duas vezes o paralelismo do pool, limitados a MAX_BUFFERED_BYTES), cada um com o seu próprio objeto Cipher e os seus buffers,
+    e entregam os resultados na ordem dos blocos. O formato é o mesmo nos dois modos, então cada lado escolhe o seu independentemente do
+    outro, e a vazão de uma única transferência grande passa a crescer com o número de núcleos do processador.
+
+    Somente as cifras autenticadas são aceitas; o DES não tem autenticação e não pode ser usado em fluxos.
+*/
+public class ChunkedCipher {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int SALT_LENGTH = 16;
+
+    // Limite do conteúdo dos blocos em processamento ao mesmo tempo no modo paralelo, para a memória usada continuar limitada
+    public static final int MAX_BUFFERED_BYTES = 4 * 1024 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CipherSuite cipherSuite;
+    private final SecretKey transferKey;
+    private final byte[] salt;
+    private final int chunkSize;
+    private final Cipher cipher;
+    private final byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+    private final byte[] associatedData = new byte[9];
+
+    private ByteBuffer decrypted;
+    private long chunkIndex;
+    private boolean finished;
+
+    // Blocos do modo paralelo, usados como um anel: os blocos em processamento começam em firstSegment e são entregues nessa ordem
+    private Segment[] segments;
+    private int firstSegment;
+    private int segmentsInFlight;
+    private boolean lastSubmitted;
+
+    /*
+        Cria o objeto para uma transferência. O lado que envia gera um salt novo com newSalt() e o envia ao outro lado, que cria o seu
+        ChunkedCipher com o mesmo salt para descriptografar.
+    */
+    public ChunkedCipher(CipherSuite cipherSuite, SecretKey sessionKey, byte[] salt, int chunkSize) throws GeneralSecurityException {
+        if (!cipherSuite.isAead())
+            throw new GeneralSecurityException("A transferência em fluxo exige uma cifra autenticada; a cifra " + cipherSuite.getName() + " não é suportada.");
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("O tamanho do bloco deve ser maior que zero.");
+
+        this.cipherSuite = cipherSuite;
+        this.salt = salt.clone();
+        this.chunkSize = chunkSize;
+        byte[] keyBytes = Hkdf.derive(sessionKey.getEncoded(), salt, "fluxo".getBytes(StandardCharsets.UTF_8), cipherSuite.getKeyLength());
+        this.transferKey = cipherSuite.keyFromBytes(keyBytes);
+        this.cipher = Cipher.getInstance(cipherSuite.getTransformation());
+    }
+
+    // Gera um salt aleatório para uma nova transferência
+    public static byte[] newSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    // Destino dos blocos criptografados, por exemplo um quadro do protocolo enviado pelo socket
+    public interface ChunkSink {
+        void accept(ByteBuffer encryptedChunk, boolean last) throws IOException;
+    }
+
+    // Criptografa um InputStream inteiro, bloco por bloco
+    public long encrypt(InputStream source, ChunkSink sink) throws IOException, GeneralSecurityException {
+        return encrypt(Channels.newChannel(source), sink);
+    }
+
+    /*
+        Criptografa um ReadableByteChannel inteiro, bloco por bloco, e entrega cada bloco criptografado ao sink. Os buffers de entrada e de
+        saída são alocados uma única vez e reaproveitados em todos os blocos. O último bloco pode ser vazio, quando o tamanho do fluxo é
+        múltiplo do tamanho do bloco. Retorna a quantidade de bytes lidos do fluxo.
+    */
+    public long encrypt(ReadableByteChannel source, ChunkSink sink) throws IOException, GeneralSecurityException {
+        ByteBuffer plaintext = ByteBuffer.allocate(chunkSize);
+        ByteBuffer encrypted = ByteBuffer.allocate(chunkSize + CipherSuite.TAG_LENGTH);
+        long total = 0;
+
+        boolean last = false;
+        while (!last) {
+            plaintext.clear();
+            while (plaintext.hasRemaining()) {
+                if (source.read(plaintext) < 0) {
+                    last = true;
+                    break;
+                }
+            }
+            plaintext.flip();
+            total += plaintext.remaining();
+
+            encrypted.clear();
+            encryptChunk(plaintext, encrypted, last);
+            encrypted.flip();
+            sink.accept(encrypted, last);
+        }
+        return total;
+    }
+
+    /*
+        Criptografa um ReadableByteChannel inteiro em paralelo, no pool informado, e entrega os blocos criptografados ao sink na ordem.
+        A thread que chama lê os blocos do fluxo e os entrega ao sink; assim que o bloco mais antigo é entregue, o seu lugar é ocupado pelo
+        próximo bloco lido, então a leitura, a criptografia e o envio acontecem ao mesmo tempo. Retorna a quantidade de bytes lidos do fluxo.
+    */
+    public long encrypt(ReadableByteChannel source, ChunkSink sink, ForkJoinPool pool) throws IOException, GeneralSecurityException {
+        prepareSegments(pool);
+        long total = 0;
+
+        boolean last = false;
+        while (true) {
+            while (!last && segmentsInFlight < segments.length) {
+                Segment segment = segments[(firstSegment + segmentsInFlight) % segments.length];
+                ByteBuffer plaintext = segment.input.clear().limit(chunkSize);
+                while (plaintext.hasRemaining()) {
+                    if (source.read(plaintext) < 0) {
+                        last = true;
+                        break;
+                    }
+                }
+                plaintext.flip();
+                total += plaintext.remaining();
+                submit(segment, Cipher.ENCRYPT_MODE, last, pool);
+            }
+            if (segmentsInFlight == 0)
+                return total;
+
+            Segment segment = nextCompleted();
+            sink.accept(segment.output, segment.last);
+        }
+    }
+
+    // Criptografa um único bloco, usando o próximo número de bloco
+    public void encryptChunk(ByteBuffer plaintext, ByteBuffer encrypted, boolean last) throws GeneralSecurityException {
+        prepare(cipher, Cipher.ENCRYPT_MODE, chunkIndex, last, nonce, associatedData);
+        cipher.doFinal(plaintext, encrypted);
+        chunkIndex++;
+    }
+
+    /*
+        Descriptografa o próximo bloco recebido e escreve o resultado no destino (por exemplo um FileChannel). Lança
+        AEADBadTagException se o bloco tiver sido alterado, estiver fora de ordem ou se a indicação de último bloco não conferir.
+    */
+    public int decryptChunk(ByteBuffer encrypted, boolean last, WritableByteChannel target) throws IOException, GeneralSecurityException {
+        if (finished)
+            throw new GeneralSecurityException("Bloco recebido depois do último bloco do fluxo.");
+
+        if (encrypted.remaining() < CipherSuite.TAG_LENGTH || encrypted.remaining() > chunkSize + CipherSuite.TAG_LENGTH)
+            throw new GeneralSecurityException("Tamanho de bloco inválido: " + encrypted.remaining());
+
+        // O buffer de saída é alocado no primeiro bloco e reaproveitado nos seguintes
+        if (decrypted == null)
+            decrypted = ByteBuffer.allocate(chunkSize);
+        ByteBuffer plaintext = decrypted.clear();
+        prepare(cipher, Cipher.DECRYPT_MODE, chunkIndex, last, nonce, associatedData);
+        cipher.doFinal(encrypted, plaintext);
+        chunkIndex++;
+        finished = last;
+
+        plaintext.flip();
+        int size = plaintext.remaining();
+        while (plaintext.hasRemaining())
+            target.write(plaintext);
+        return size;
+    }
+
+    /*
+        Descriptografa o próximo bloco recebido em paralelo, no pool informado. O bloco é copiado para um buffer próprio e descriptografado
+        enquanto os próximos blocos são recebidos; os blocos já descriptografados são escritos no destino na ordem, quando o anel de blocos
+        enche ou quando o último bloco é recebido (nesse caso a chamada aguarda todos os blocos). Retorna a quantidade de bytes escritos no
+        destino nesta chamada, que pode ser zero ou corresponder a vários blocos. Uma falha de autenticação é lançada na chamada que
+        escreveria o bloco alterado, e nenhum bloco posterior é escrito.
+    */
+    public int decryptChunk(ByteBuffer encrypted, boolean last, WritableByteChannel target, ForkJoinPool pool) throws IOException, GeneralSecurityException {
+        if (finished || lastSubmitted)
+            throw new GeneralSecurityException("Bloco recebido depois do último bloco do fluxo.");
+
+        if (encrypted.remaining() < CipherSuite.TAG_LENGTH || encrypted.remaining() > chunkSize + CipherSuite.TAG_LENGTH)
+            throw new GeneralSecurityException("Tamanho de bloco inválido: " + encrypted.remaining());
+
+        prepareSegments(pool);
+        int written = 0;
+        if (segmentsInFlight == segments.length)
+            written += write(nextCompleted(), target);
+
+        Segment segment = segments[(firstSegment + segmentsInFlight) % segments.length];
+        segment.input.clear();
+        segment.input.put(encrypted).flip();// O buffer do quadro é reaproveitado na leitura seguinte, então o bloco é copiado
+        submit(segment, Cipher.DECRYPT_MODE, last, pool);
+        lastSubmitted = last;
+
+        if (last) {
+            while (segmentsInFlight > 0)
+                written += write(nextCompleted(), target);
+            finished = true;
+        }
+        return written;
+    }
+
+    // Indica se o último bloco do fluxo já foi descriptografado
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // Cria o anel de blocos do modo paralelo na primeira chamada
+    private void prepareSegments(ForkJoinPool pool) throws GeneralSecurityException {
+        if (segments != null)
+            return;
+        int count = Math.max(1, Math.min(2 * pool.getParallelism(), MAX_BUFFERED_BYTES / chunkSize));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment(Cipher.getInstance(cipherSuite.getTransformation()), chunkSize);
+    }
+
+    // Atribui o próximo número de bloco ao bloco e o entrega ao pool para ser criptografado ou descriptografado
+    private void submit(Segment segment, int mode, boolean last, ForkJoinPool pool) {
+        segment.index = chunkIndex++;
+        segment.last = last;
+        segment.task = pool.submit(() -> segment.process(this, mode));
+        segmentsInFlight++;
+    }
+
+    // Aguarda o bloco mais antigo em processamento e o retira do anel; o resultado fica em segment.output, pronto para leitura
+    private Segment nextCompleted() throws IOException, GeneralSecurityException {
+        Segment segment = segments[firstSegment];
+        firstSegment = (firstSegment + 1) % segments.length;
+        segmentsInFlight--;
+        try {
+            segment.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido durante o processamento dos blocos.", e);
+        } catch (ExecutionException e) {
+            throw new GeneralSecurityException("Falha no processamento do bloco " + segment.index + ".", e.getCause());
+        } finally {
+            segment.task = null;
+        }
+        if (segment.failure != null)
+            throw segment.failure;
+        return segment;
+    }
+
+    // Escreve o bloco descriptografado no destino e retorna a quantidade de bytes escritos
+    private static int write(Segment segment, WritableByteChannel target) throws IOException {
+        int size = segment.output.remaining();
+        while (segment.output.hasRemaining())
+            target.write(segment.output);
+        return size;
+    }
+
+    // Inicializa a cifra com o nonce do bloco informado e autentica o número do bloco e a indicação de último bloco
+    private void prepare(Cipher cipher, int mode, long index, boolean last, byte[] nonce, byte[] associatedData) throws GeneralSecurityException {
+        ByteBuffer.wrap(nonce, CipherSuite.NONCE_LENGTH - 8, 8).putLong(index);
+        ByteBuffer.wrap(associatedData).putLong(index).put((byte) (last ? 1 : 0));
+        cipher.init(mode, transferKey, cipherSuite.parameters(nonce));
+        cipher.updateAAD(associatedData);
+    }
+
+    /*
+        Um bloco do modo paralelo, com o seu próprio objeto Cipher, nonce e buffers. Cada bloco é processado por uma única tarefa do pool de
+        cada vez, e só é reaproveitado depois que o resultado da tarefa é lido (Future.get garante que a thread que lê enxerga os buffers
+        escritos pela tarefa).
+    */
+    private static final class Segment {
+        private final Cipher cipher;
+        private final byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+        private final byte[] associatedData = new byte[9];
+        private final ByteBuffer input;
+        private final ByteBuffer output;
+        private long index;
+        private boolean last;
+        private Future<?> task;
+        private GeneralSecurityException failure;
+
+        private Segment(Cipher cipher, int chunkSize) {
+            this.cipher = cipher;
+            this.input = ByteBuffer.allocate(chunkSize + CipherSuite.TAG_LENGTH);
+            this.output = ByteBuffer.allocate(chunkSize + CipherSuite.TAG_LENGTH);
+        }
+
+        // A falha de autenticação é guardada no bloco e lançada na thread que lê o resultado, sem ser embrulhada pelo pool
+        private void process(ChunkedCipher chunkedCipher, int mode) {
+            output.clear();
+            failure = null;
+            try {
+                chunkedCipher.prepare(cipher, mode, index, last, nonce, associatedData);
+                cipher.doFinal(input, output);
+            } catch (GeneralSecurityException e) {
+                failure = e;
+            }
+            output.flip();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package auxiliar;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+    O enum CipherSuite representa as cifras simétricas que podem ser usadas para criptografar as mensagens da sessão.
+
+    As cifras AES-GCM e ChaCha20-Poly1305 são cifras autenticadas (AEAD): além de esconder o conteúdo, detectam qualquer alteração na
+    mensagem. O AES-GCM usa as instruções AES-NI e CLMUL dos processadores atuais e é muito mais rápido que o DES, que processa blocos de
+    8 bytes sem nenhum suporte do hardware. O DES/ECB continua disponível apenas por compatibilidade com os clientes antigos.
+
+    Negociação:
+        1- O cliente envia a lista das cifras que suporta, separadas por vírgula (por exemplo "AES-128-GCM,AES-256-GCM,CHACHA20-POLY1305,DES").
+        2- O servidor escolhe, na sua ordem de preferência, a primeira cifra que também foi oferecida pelo cliente.
+        3- Um cliente que não envia a lista (versão antiga) usa o DES.
+
+    Formato de cada mensagem criptografada com uma cifra AEAD: nonce aleatório de 12 bytes seguido do texto cifrado e da etiqueta de
+    autenticação de 16 bytes.
+
+    Os métodos encrypt e decrypt reaproveitam um objeto Cipher por thread para cada cifra, já que o Cipher.getInstance procura o provedor a
+    cada chamada. Para as mensagens de uma sessão, a classe SessionCipher evita também os arrays criados a cada mensagem.
+*/
+public enum CipherSuite {
+    AES_128_GCM("AES-128-GCM", "AES/GCM/NoPadding", "AES", 16),
+    AES_256_GCM("AES-256-GCM", "AES/GCM/NoPadding", "AES", 32),
+    CHACHA20_POLY1305("CHACHA20-POLY1305", "ChaCha20-Poly1305", "ChaCha20", 32),
+    DES("DES", "DES/ECB/PKCS5Padding", "DES", 8);
+
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String name;
+    private final String transformation;
+    private final String keyAlgorithm;
+    private final int keyLength;
+    private final ThreadLocal<Cipher> cachedCipher = new ThreadLocal<>();
+
+    CipherSuite(String name, String transformation, String keyAlgorithm, int keyLength) {
+        this.name = name;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+        this.keyLength = keyLength;
+    }
+
+    // Nome da cifra usado na negociação
+    public String getName() {
+        return name;
+    }
+
+    public String getTransformation() {
+        return transformation;
+    }
+
+    public int getKeyLength() {
+        return keyLength;
+    }
+
+    // Indica se a cifra é autenticada (AEAD) e usa nonce
+    public boolean isAead() {
+        return this != DES;
+    }
+
+    /*
+        Deriva a chave simétrica da sessão a partir do segredo compartilhado bruto da troca de chaves.
+        As cifras AEAD usam o HKDF-SHA256, com um rótulo que inclui o algoritmo de troca de chaves e o nome da cifra. O DES mantém a derivação
+        antiga (8 primeiros bytes do SHA-1 do segredo) para continuar compatível com os clientes antigos.
+    */
+    public SecretKey deriveKey(byte[] rawSecret, String keyExchangeName) throws Exception {
+        if (this == DES)
+            return DiffieHellmanDES.deriveSecretKey(rawSecret);
+
+        byte[] info = ("Criptografia-e-Redes " + keyExchangeName + " " + name).getBytes(StandardCharsets.UTF_8);
+        return new SecretKeySpec(Hkdf.derive(rawSecret, null, info, keyLength), keyAlgorithm);
+    }
+
+    /*
+        Catraca de chaves (key ratchet): deriva a chave da geração informada a partir da chave atual da sessão, com HKDF-SHA256 e um rótulo
+        com o nome da cifra e o número da geração. Custa apenas alguns HMACs, contra a geração de pares de chaves e o acordo de chaves de
+        uma nova troca de chaves, e a chave anterior não pode ser recuperada a partir da nova. No DES, a nova chave continua tendo 8 bytes.
+    */
+    public SecretKey nextKey(SecretKey currentKey, long generation) throws GeneralSecurityException {
+        byte[] info = ("Criptografia-e-Redes atualizacao " + name + " " + generation).getBytes(StandardCharsets.UTF_8);
+        return keyFromBytes(Hkdf.derive(currentKey.getEncoded(), null, info, keyLength));
+    }
+
+    // Cria uma chave da cifra a partir de bytes já derivados
+    public SecretKey keyFromBytes(byte[] keyBytes) {
+        return new SecretKeySpec(keyBytes, keyAlgorithm);
+    }
+
+    // Criptografa os bytes informados; nas cifras AEAD o resultado começa com o nonce aleatório usado
+    public byte[] encrypt(byte[] plaintext, SecretKey secretKey) throws GeneralSecurityException {
+        Cipher cipher = cipher();
+        if (!isAead()) {
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            return cipher.doFinal(plaintext);
+        }
+
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, parameters(nonce));
+
+        byte[] output = new byte[NONCE_LENGTH + cipher.getOutputSize(plaintext.length)];
+        System.arraycopy(nonce, 0, output, 0, NONCE_LENGTH);
+        cipher.doFinal(plaintext, 0, plaintext.length, output, NONCE_LENGTH);
+        return output;
+    }
+
+    // Descriptografa os bytes informados; nas cifras AEAD lança AEADBadTagException se a mensagem tiver sido alterada
+    public byte[] decrypt(byte[] ciphertext, SecretKey secretKey) throws GeneralSecurityException {
+        Cipher cipher = cipher();
+        if (!isAead()) {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey);
+            return cipher.doFinal(ciphertext);
+        }
+
+        if (ciphertext.length < NONCE_LENGTH + TAG_LENGTH)
+            throw new GeneralSecurityException("Mensagem criptografada muito curta.");
+
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, parameters(Arrays.copyOf(ciphertext, NONCE_LENGTH)));
+        return cipher.doFinal(ciphertext, NONCE_LENGTH, ciphertext.length - NONCE_LENGTH);
+    }
+
+    // Objeto Cipher desta cifra reaproveitado pela thread atual; é sempre reinicializado com a chave (e o nonce) antes do uso
+    private Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = cachedCipher.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            cachedCipher.set(cipher);
+        }
+        return cipher;
+    }
+
+    // Criptografa uma mensagem de texto e a codifica em Base64. O DES mantém exatamente o formato antigo de DiffieHellmanDES.encryptMessage.
+    public String encryptMessage(String message, SecretKey secretKey) throws Exception {
+        return Base64.getEncoder().encodeToString(encrypt(message.getBytes(StandardCharsets.UTF_8), secretKey));
+    }
+
+    // Decodifica uma mensagem em Base64 e a descriptografa
+    public String decryptMessage(String encryptedMessage, SecretKey secretKey) throws Exception {
+        return new String(decrypt(Base64.getDecoder().decode(encryptedMessage), secretKey), StandardCharsets.UTF_8);
+    }
+
+    // Parâmetros da cifra AEAD para o nonce informado
+    public AlgorithmParameterSpec parameters(byte[] nonce) {
+        if (this == CHACHA20_POLY1305)
+            return new IvParameterSpec(nonce);
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    // Cifras suportadas, da preferida para a menos preferida
+    public static String offer() {
+        StringBuilder offer = new StringBuilder();
+        for (CipherSuite suite : values()) {
+            if (offer.length() > 0)
+                offer.append(',');
+            offer.append(suite.name);
+        }
+        return offer.toString();
+    }
+
+    // Escolhe a cifra da sessão a partir da lista oferecida pelo cliente
+    public static CipherSuite negotiate(String offer) {
+        if (offer == null || offer.isBlank())
+            return DES;
+
+        for (CipherSuite suite : values()) {
+            for (String offered : offer.split(",")) {
+                if (offered.trim().equalsIgnoreCase(suite.name))
+                    return suite;
+            }
+        }
+        throw new IllegalArgumentException("Nenhuma cifra em comum: " + offer);
+    }
+
+    // Retorna a cifra com o nome usado na negociação
+    public static CipherSuite fromName(String name) {
+        for (CipherSuite suite : values()) {
+            if (suite.name.equalsIgnoreCase(name))
+                return suite;
+        }
+        throw new IllegalArgumentException("Cifra desconhecida: " + name);
+    }
+}
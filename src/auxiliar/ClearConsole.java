@@ -3,13 +3,22 @@ package auxiliar;
 import java.io.IOException;
 
 public class ClearConsole {
-    // Função que verifica qual o SO para limpar o console
+    /*
+        Função que verifica qual o SO para limpar o console.
+        No Linux e no MacOS a tela é limpa com a sequência de escape ANSI, sem criar um processo "clear" a cada chamada (o processo criado por
+        Runtime.exec não herdava o console, então a tela nem era limpa). Quando o programa não está em um terminal (modo daemon, saída
+        redirecionada para um arquivo ou para um supervisor de processos) nada é feito.
+    */
     public static void clear() throws IOException, InterruptedException {
+        if (System.console() == null)
+            return;
+
         //Limpa a tela no windows, no linux e no MacOS
-        if (System.getProperty("os.name").contains("Windows"))
+        if (System.getProperty("os.name").contains("Windows")) {
             new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
-        else
-            Runtime.getRuntime().exec("clear");
-
+        } else {
+            System.out.print("\033[H\033[2J");
+            System.out.flush();
+        }
     }
 }
@@ -1,9 +1,12 @@
 package auxiliar;
 
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.MessageDigest;
 import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
 
 import javax.crypto.Cipher;
@@ -12,33 +15,33 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 /*
-    No cdigo apresentado abaaixo,  utilizado tanto criptografia simtrica quanto assimtrica.
+    No código apresentado abaaixo, é utilizado tanto criptografia simétrica quanto assimétrica.
 
-    A criptografia simtrica  usada para criptografar e descriptografar as mensagens, e o algoritmo utilizado  o DES (Data Encryption Standard). A chave
-    simtrica gerada pelo algoritmo de troca de chaves Diffie-Hellman  usada para inicializar o objeto Cipher e realizar a criptografia e descriptografia dos dados.
+    A criptografia simétrica é usada para criptografar e descriptografar as mensagens, e o algoritmo utilizado é o DES (Data Encryption Standard). A chave
+    simétrica gerada pelo algoritmo de troca de chaves Diffie-Hellman é usada para inicializar o objeto Cipher e realizar a criptografia e descriptografia dos dados.
 
-    Por outro lado, a criptografia assimtrica  utilizada no algoritmo de troca de chaves Diffie-Hellman. Esse algoritmo permite que duas partes
-    (no caso do cdigo fornecido, a classe DiffieHellmanDES) estabeleam uma chave compartilhada sem realmente compartilhar a chave real. A chave pblica
-     usada para trocar informaes e calcular um valor comum (o segredo compartilhado), que  usado posteriormente para gerar a chave simtrica.
+    Por outro lado, a criptografia assimétrica é utilizada no algoritmo de troca de chaves Diffie-Hellman. Esse algoritmo permite que duas partes
+    (no caso do código fornecido, a classe DiffieHellmanDES) estabeleçam uma chave compartilhada sem realmente compartilhar a chave real. A chave pública
+    é usada para trocar informações e calcular um valor comum (o segredo compartilhado), que é usado posteriormente para gerar a chave simétrica.
 
-    Portanto, a criptografia simtrica (DES)  usada para criptografar e descriptografar as mensagens, enquanto a criptografia assimtrica (Diffie-Hellman)  usada para estabelecer a chave simtrica compartilhada.
+    Portanto, a criptografia simétrica (DES) é usada para criptografar e descriptografar as mensagens, enquanto a criptografia assimétrica (Diffie-Hellman) é usada para estabelecer a chave simétrica compartilhada.
 
-    Essa combinao de criptografia simtrica e assimtrica  comumente usada em sistemas criptogrficos hbridos, aproveitando a eficincia da criptografia simtrica e a segurana da criptografia assimtrica.
+    Essa combinação de criptografia simétrica e assimétrica é comumente usada em sistemas criptográficos híbridos, aproveitando a eficiência da criptografia simétrica e a segurança da criptografia assimétrica.
 */
 
-public class DiffieHellmanDES {
+public class DiffieHellmanDES implements KeyExchange {
 	private KeyPairGenerator keyPairGenerator;
     private KeyAgreement keyAgreement;
     private KeyPair keyPair;
     private PublicKey publicKey;
 
     /*
-        Declarao da classe DiffieHellmanDES, que  responsvel por gerar chaves e realizar a troca de chaves de Diffie-Hellman, alm de criptografar
+        Declaração da classe DiffieHellmanDES, que é responsável por gerar chaves e realizar a troca de chaves de Diffie-Hellman, além de criptografar
         e descriptografar mensagens usando o algoritmo DES.
 
-        No construtor da classe DiffieHellmanDES, temos a inicializao do gerador de chaves Diffie-Hellman atravs do mtodo getInstance("DiffieHellman").
-        Em seguida, o tamanho da chave  definido como 1024 bits atravs do mtodo initialize(1024) do objeto keyPairGenerator. O par de chaves  gerado
-        atravs do mtodo generateKeyPair() e a chave pblica  obtida atravs do mtodo getPublic().
+        No construtor da classe DiffieHellmanDES, temos a inicialização do gerador de chaves Diffie-Hellman através do método getInstance("DiffieHellman").
+        Em seguida, o tamanho da chave é definido como 1024 bits através do método initialize(1024) do objeto keyPairGenerator. O par de chaves é gerado
+        através do método generateKeyPair() e a chave pública é obtida através do método getPublic().
     */
     public DiffieHellmanDES() throws Exception {
         // Inicializa o gerador de chaves Diffie-Hellman
@@ -48,32 +51,68 @@ public class DiffieHellmanDES {
         // Gera o par de chaves
         keyPair = keyPairGenerator.generateKeyPair();
 
-        // Obtm a chave pblica
+        // Obtém a chave pública
         publicKey = keyPair.getPublic();
     }
 
-    // Este mtodo retorna a chave pblica gerada pelo objeto keyPair.
+    /*
+        Este construtor recebe um par de chaves já gerado, normalmente retirado de um KeyPairPool abastecido em segundo plano. Assim a conexão
+        não precisa esperar a geração do par de chaves, que é a parte mais cara da inicialização.
+    */
+    public DiffieHellmanDES(KeyPair keyPair) {
+        this.keyPair = keyPair;
+        publicKey = keyPair.getPublic();
+    }
+
+    // Nome usado na negociação do algoritmo de troca de chaves (classe KeyExchanges).
+    @Override
+    public String getName() {
+        return KeyExchanges.DH;
+    }
+
+    // Este método retorna a chave pública gerada pelo objeto keyPair.
+    @Override
     public PublicKey getPublicKey() {
         return publicKey;
     }
 
+    // Este método reconstrói a chave pública Diffie-Hellman recebida a partir da codificação X.509.
+    @Override
+    public PublicKey decodePublicKey(byte[] encodedPublicKey) throws Exception {
+        KeyFactory keyFactory = KeyFactory.getInstance("DiffieHellman");
+        return keyFactory.generatePublic(new X509EncodedKeySpec(encodedPublicKey));
+    }
+
     /*
-        Este mtodo gera o segredo compartilhado (chave simtrica) a partir da chave pblica recebida como parmetro. Ele inicializa o objeto keyAgreement
-        com o algoritmo Diffie-Hellman atravs do mtodo getInstance("DiffieHellman") e, em seguida, inicializa o acordo de chaves com a chave privada
-        atravs do mtodo init(keyPair.getPrivate()). O segredo compartilhado  gerado chamando keyAgreement.doPhase(receivedPublicKey, true) e
-        keyAgreement.generateSecret(). Em seguida,  gerada uma chave simtrica a partir do segredo compartilhado utilizando a funo hash SHA-1 e, 
-        por fim,  retornada a chave simtrica (SecretKey).
+        Este método gera o segredo compartilhado (chave simétrica) a partir da chave pública recebida como parâmetro. Ele inicializa o objeto keyAgreement
+        com o algoritmo Diffie-Hellman através do método getInstance("DiffieHellman") e, em seguida, inicializa o acordo de chaves com a chave privada
+        através do método init(keyPair.getPrivate()). O segredo compartilhado é gerado chamando keyAgreement.doPhase(receivedPublicKey, true) e
+        keyAgreement.generateSecret(). Em seguida, é gerada uma chave simétrica a partir do segredo compartilhado utilizando a função hash SHA-1 e, 
+        por fim, é retornada a chave simétrica (SecretKey).
     */
+    @Override
     public SecretKey generateSharedSecret(PublicKey receivedPublicKey) throws Exception {
+        return deriveSecretKey(generateRawSecret(receivedPublicKey));
+    }
+
+    // Este método realiza o acordo de chaves Diffie-Hellman e retorna o segredo compartilhado bruto.
+    @Override
+    public byte[] generateRawSecret(PublicKey receivedPublicKey) throws Exception {
         // Inicializa o acordo de chaves com a chave privada
         keyAgreement = KeyAgreement.getInstance("DiffieHellman");
         keyAgreement.init(keyPair.getPrivate());
 
         // Gera o segredo compartilhado
         keyAgreement.doPhase(receivedPublicKey, true);
-        byte[] sharedSecret = keyAgreement.generateSecret();
+        return keyAgreement.generateSecret();
+    }
 
-        // Gera uma chave simtrica a partir do segredo compartilhado
+    /*
+        Este método gera a chave simétrica DES a partir de um segredo compartilhado bruto, usando os 8 primeiros bytes do hash SHA-1 do segredo.
+        Ele é usado por todos os algoritmos de troca de chaves (interface KeyExchange).
+    */
+    public static SecretKey deriveSecretKey(byte[] sharedSecret) throws Exception {
+        // Gera uma chave simétrica a partir do segredo compartilhado
         MessageDigest sha = MessageDigest.getInstance("SHA-1");
         byte[] sharedSecretBytes = sha.digest(sharedSecret);
         byte[] keyBytes = new byte[8];
@@ -84,35 +123,44 @@ public class DiffieHellmanDES {
     }
 
     /*
-        Este mtodo criptografa uma mensagem usando a chave simtrica recebida como parmetro. Ele inicializa o objeto Cipher com o algoritmo DES, o modo
-        de operao ECB (Electronic Codebook) e o preenchimento PKCS5Padding. Em seguida, a criptografia  realizada chamando cipher.doFinal(message.getBytes()),
-        onde message  a mensagem a ser criptografada. Os bytes criptografados so convertidos para uma representao em Base64 e retornados como uma string.
+        Este método criptografa uma mensagem usando a chave simétrica recebida como parâmetro. Ele inicializa o objeto Cipher com o algoritmo DES, o modo
+        de operação ECB (Electronic Codebook) e o preenchimento PKCS5Padding. Em seguida, a criptografia é realizada chamando cipher.doFinal(message.getBytes(StandardCharsets.UTF_8)),
+        onde message é a mensagem a ser criptografada. Os bytes criptografados são convertidos para uma representação em Base64 e retornados como uma string.
     */
     public String encryptMessage(String message, SecretKey secretKey) throws Exception {
-        // Criptografa a mensagem usando a chave simtrica
+        return encrypt(message, secretKey);
+    }
+
+    /*
+        Este método descriptografa uma mensagem criptografada usando a chave simétrica recebida como parâmetro. Ele decodifica a mensagem criptografada de
+        Base64 para obter os bytes criptografados através de Base64.getDecoder().decode(encryptedMessage). Em seguida, o objeto Cipher é inicializado com o
+        algoritmo DES, o modo de operação ECB e o preenchimento PKCS5Padding. A descriptografia é realizada chamando cipher.doFinal(encryptedBytes), onde
+        encryptedBytes são os bytes criptografados. Os bytes descriptografados são convertidos para uma string e retornados.
+    */
+    public String decryptMessage(String encryptedMessage, SecretKey secretKey) throws Exception {
+        return decrypt(encryptedMessage, secretKey);
+    }
+
+    // A criptografia não usa o par de chaves da instância: os dois métodos acima delegam para as implementações estáticas abaixo
+    private static String encrypt(String message, SecretKey secretKey) throws Exception {
+        // Criptografa a mensagem usando a chave simétrica
         Cipher cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
         cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encryptedBytes = cipher.doFinal(message.getBytes());
+        byte[] encryptedBytes = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
 
         // Codifica os bytes criptografados para Base64
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
-    /*
-        Este mtodo descriptografa uma mensagem criptografada usando a chave simtrica recebida como parmetro. Ele decodifica a mensagem criptografada de
-        Base64 para obter os bytes criptografados atravs de Base64.getDecoder().decode(encryptedMessage). Em seguida, o objeto Cipher  inicializado com o
-        algoritmo DES, o modo de operao ECB e o preenchimento PKCS5Padding. A descriptografia  realizada chamando cipher.doFinal(encryptedBytes), onde
-        encryptedBytes so os bytes criptografados. Os bytes descriptografados so convertidos para uma string e retornados.
-    */
-    public String decryptMessage(String encryptedMessage, SecretKey secretKey) throws Exception {
+    private static String decrypt(String encryptedMessage, SecretKey secretKey) throws Exception {
         // Decodifica a mensagem criptografada de Base64
         byte[] encryptedBytes = Base64.getDecoder().decode(encryptedMessage);
 
-        // Descriptografa a mensagem usando a chave simtrica
+        // Descriptografa a mensagem usando a chave simétrica
         Cipher cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
         cipher.init(Cipher.DECRYPT_MODE, secretKey);
         byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
 
-        return new String(decryptedBytes);
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,57 @@
+package auxiliar;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+import javax.crypto.KeyAgreement;
+
+/*
+    A classe EllipticCurveKeyExchange realiza a troca de chaves Diffie-Hellman sobre curvas elípticas.
+
+    Comparado ao Diffie-Hellman clássico de 1024 bits, a geração do par de chaves e o cálculo do segredo compartilhado são muito mais
+    rápidos, e a chave pública é bem menor (44 bytes em X.509 para o X25519, contra mais de 400 bytes no Diffie-Hellman clássico).
+
+    Os algoritmos suportados são definidos na classe KeyExchanges:
+        - X25519: curva Curve25519 (KeyPairGenerator, KeyAgreement e KeyFactory "X25519").
+        - ECDH-P256: curva NIST P-256 (KeyPairGenerator e KeyFactory "EC", KeyAgreement "ECDH").
+*/
+public class EllipticCurveKeyExchange implements KeyExchange {
+    private final String name;
+    private final String agreementAlgorithm;
+    private final String keyFactoryAlgorithm;
+    private final KeyPair keyPair;
+
+    public EllipticCurveKeyExchange(String name, String agreementAlgorithm, String keyFactoryAlgorithm, KeyPair keyPair) {
+        this.name = name;
+        this.agreementAlgorithm = agreementAlgorithm;
+        this.keyFactoryAlgorithm = keyFactoryAlgorithm;
+        this.keyPair = keyPair;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return keyPair.getPublic();
+    }
+
+    @Override
+    public PublicKey decodePublicKey(byte[] encodedPublicKey) throws Exception {
+        KeyFactory keyFactory = KeyFactory.getInstance(keyFactoryAlgorithm);
+        return keyFactory.generatePublic(new X509EncodedKeySpec(encodedPublicKey));
+    }
+
+    // Inicializa o acordo de chaves com a chave privada e gera o segredo compartilhado a partir da chave pública recebida
+    @Override
+    public byte[] generateRawSecret(PublicKey receivedPublicKey) throws Exception {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance(agreementAlgorithm);
+        keyAgreement.init(keyPair.getPrivate());
+        keyAgreement.doPhase(receivedPublicKey, true);
+        return keyAgreement.generateSecret();
+    }
+}
@@ -0,0 +1,61 @@
+package auxiliar;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+    A classe Hkdf implementa a função de derivação de chaves HKDF com HMAC-SHA256 (RFC 5869).
+
+    O segredo compartilhado gerado pela troca de chaves não deve ser usado diretamente como chave simétrica. O HKDF o transforma em chaves
+    uniformes do tamanho exigido por cada cifra:
+        1- Extração: prk = HMAC(salt, segredo), concentrando a entropia do segredo em 32 bytes.
+        2- Expansão: gera quantos bytes forem necessários a partir de prk, separados pelo rótulo info.
+
+    Rótulos (info) diferentes geram chaves independentes a partir do mesmo segredo.
+*/
+public final class Hkdf {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_LENGTH = 32;
+
+    private Hkdf() {
+    }
+
+    // Deriva length bytes a partir do segredo, do salt (opcional) e do rótulo info
+    public static byte[] derive(byte[] secret, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        return expand(extract(salt, secret), info, length);
+    }
+
+    // Etapa de extração: sem salt, usa um salt de zeros do tamanho do hash
+    public static byte[] extract(byte[] salt, byte[] secret) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(salt != null && salt.length > 0 ? salt : new byte[HASH_LENGTH], HMAC_ALGORITHM));
+        return mac.doFinal(secret);
+    }
+
+    // Etapa de expansão: T(i) = HMAC(prk, T(i-1) || info || i), concatenando os blocos até completar length bytes
+    public static byte[] expand(byte[] prk, byte[] info, int length) throws GeneralSecurityException {
+        if (length > 255 * HASH_LENGTH)
+            throw new IllegalArgumentException("O HKDF gera no máximo " + (255 * HASH_LENGTH) + " bytes.");
+
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(prk, HMAC_ALGORITHM));
+
+        byte[] output = new byte[length];
+        byte[] block = new byte[0];
+        int offset = 0;
+        for (int counter = 1; offset < length; counter++) {
+            mac.update(block);
+            if (info != null)
+                mac.update(info);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+
+            int size = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, output, offset, size);
+            offset += size;
+        }
+        return output;
+    }
+}
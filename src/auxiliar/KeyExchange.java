@@ -0,0 +1,34 @@
+package auxiliar;
+
+import java.security.PublicKey;
+
+import javax.crypto.SecretKey;
+
+/*
+    A interface KeyExchange representa um algoritmo de troca de chaves usado no início da sessão entre o cliente e o servidor.
+
+    Cada lado cria um objeto KeyExchange com um par de chaves efêmero, envia a sua chave pública para o outro lado e gera o segredo
+    compartilhado a partir da chave pública recebida. As implementações disponíveis são:
+        - DiffieHellmanDES: Diffie-Hellman clássico de 1024 bits ("DH").
+        - EllipticCurveKeyExchange: Diffie-Hellman sobre curvas elípticas, X25519 ("X25519") ou P-256 ("ECDH-P256").
+
+    O algoritmo usado em cada sessão é negociado entre o cliente e o servidor pela classe KeyExchanges.
+*/
+public interface KeyExchange {
+    // Nome do algoritmo usado na negociação
+    String getName();
+
+    // Chave pública do par efêmero, enviada ao outro lado codificada em X.509
+    PublicKey getPublicKey();
+
+    // Reconstrói a chave pública recebida do outro lado a partir da codificação X.509
+    PublicKey decodePublicKey(byte[] encodedPublicKey) throws Exception;
+
+    // Gera o segredo compartilhado bruto, sem nenhuma derivação, a partir da chave pública recebida
+    byte[] generateRawSecret(PublicKey receivedPublicKey) throws Exception;
+
+    // Gera a chave simétrica da sessão a partir da chave pública recebida
+    default SecretKey generateSharedSecret(PublicKey receivedPublicKey) throws Exception {
+        return DiffieHellmanDES.deriveSecretKey(generateRawSecret(receivedPublicKey));
+    }
+}
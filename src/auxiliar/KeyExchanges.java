@@ -0,0 +1,110 @@
+package auxiliar;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    A classe KeyExchanges reúne os algoritmos de troca de chaves disponíveis e a negociação do algoritmo usado em cada sessão.
+
+    Negociação:
+        1- O cliente envia a lista dos algoritmos que suporta, separados por vírgula (por exemplo "X25519,ECDH-P256,DH").
+        2- O servidor escolhe, na sua ordem de preferência (SUPPORTED), o primeiro algoritmo que também foi oferecido pelo cliente.
+        3- Um cliente que não envia a lista (versão antiga) usa o Diffie-Hellman clássico.
+*/
+public final class KeyExchanges {
+    public static final String DH = "DH";
+    public static final String X25519 = "X25519";
+    public static final String ECDH_P256 = "ECDH-P256";
+
+    // Algoritmos suportados, do preferido para o menos preferido
+    public static final String[] SUPPORTED = { X25519, ECDH_P256, DH };
+
+    private KeyExchanges() {
+    }
+
+    // Lista dos algoritmos suportados no formato enviado na negociação
+    public static String offer() {
+        return String.join(",", SUPPORTED);
+    }
+
+    // Escolhe o algoritmo da sessão a partir da lista oferecida pelo cliente
+    public static String negotiate(String offer) {
+        if (offer == null || offer.isBlank())
+            return DH;
+
+        for (String name : SUPPORTED) {
+            for (String offered : offer.split(",")) {
+                if (offered.trim().equalsIgnoreCase(name))
+                    return name;
+            }
+        }
+        throw new IllegalArgumentException("Nenhum algoritmo de troca de chaves em comum: " + offer);
+    }
+
+    // Nome do algoritmo usado pelo KeyPairGenerator de cada troca de chaves
+    public static String keyPairAlgorithm(String name) {
+        switch (name) {
+            case DH:
+                return "DiffieHellman";
+            case X25519:
+                return "X25519";
+            case ECDH_P256:
+                return "EC";
+            default:
+                throw new IllegalArgumentException("Algoritmo de troca de chaves desconhecido: " + name);
+        }
+    }
+
+    // Tamanho da chave usado na inicialização do KeyPairGenerator (0 quando o algoritmo já define o tamanho)
+    public static int keySize(String name) {
+        switch (name) {
+            case DH:
+                return 1024;
+            case X25519:
+                return 0;
+            case ECDH_P256:
+                return 256;
+            default:
+                throw new IllegalArgumentException("Algoritmo de troca de chaves desconhecido: " + name);
+        }
+    }
+
+    // Gera um par de chaves efêmero para o algoritmo informado
+    public static KeyPair generateKeyPair(String name) throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(keyPairAlgorithm(name));
+        if (keySize(name) > 0)
+            keyPairGenerator.initialize(keySize(name));
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    // Cria um pool de pares de chaves para cada algoritmo suportado
+    public static Map<String, KeyPairPool> createPools(int lowWatermark, int highWatermark, int generatorThreads) throws NoSuchAlgorithmException {
+        Map<String, KeyPairPool> pools = new LinkedHashMap<>();
+        for (String name : SUPPORTED)
+            pools.put(name, new KeyPairPool(keyPairAlgorithm(name), keySize(name), lowWatermark, highWatermark, generatorThreads));
+        return pools;
+    }
+
+    /*
+        Cria o objeto KeyExchange do algoritmo informado. Se houver um pool para o algoritmo, o par de chaves é retirado dele; caso contrário,
+        o par é gerado na hora.
+    */
+    public static KeyExchange create(String name, Map<String, KeyPairPool> pools) throws Exception {
+        KeyPairPool pool = pools != null ? pools.get(name) : null;
+        KeyPair keyPair = pool != null ? pool.take() : generateKeyPair(name);
+
+        switch (name) {
+            case DH:
+                return new DiffieHellmanDES(keyPair);
+            case X25519:
+                return new EllipticCurveKeyExchange(X25519, "X25519", "X25519", keyPair);
+            case ECDH_P256:
+                return new EllipticCurveKeyExchange(ECDH_P256, "ECDH", "EC", keyPair);
+            default:
+                throw new IllegalArgumentException("Algoritmo de troca de chaves desconhecido: " + name);
+        }
+    }
+}
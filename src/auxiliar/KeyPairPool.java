@@ -0,0 +1,171 @@
+package auxiliar;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    A classe KeyPairPool mantém um estoque de pares de chaves gerados antecipadamente por threads em segundo plano.
+
+    Gerar um par de chaves Diffie-Hellman é uma das operações mais caras da troca de chaves. Com o pool, a conexão apenas retira um par
+    pronto em vez de esperar a geração:
+
+    1- Ao iniciar, as threads geradoras enchem o pool até a marca superior (highWatermark).
+    2- O método take() retira um par pronto do pool (acerto). Se o pool estiver vazio, o par é gerado na hora (falha).
+    3- Quando a quantidade de pares fica abaixo da marca inferior (lowWatermark), as threads geradoras voltam a encher o pool até a marca superior.
+    4- Os contadores de acertos e falhas permitem dimensionar as marcas para as rajadas de conexões esperadas.
+
+    Cada par é entregue uma única vez, então as chaves continuam sendo efêmeras (uma por conexão).
+*/
+public class KeyPairPool {
+    private final String algorithm;
+    private final int keySize;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int generatorThreads;
+
+    private final LinkedBlockingQueue<KeyPair> pairs;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Object signal = new Object();
+
+    private Thread[] generators;
+    private volatile boolean running;
+    private boolean refilling = true;
+
+    public KeyPairPool(String algorithm, int keySize, int lowWatermark, int highWatermark, int generatorThreads) throws NoSuchAlgorithmException {
+        if (lowWatermark < 0 || highWatermark < 1 || lowWatermark > highWatermark)
+            throw new IllegalArgumentException("As marcas do pool devem satisfazer 0 <= inferior <= superior e superior > 0.");
+        if (generatorThreads < 1)
+            throw new IllegalArgumentException("O pool precisa de pelo menos uma thread geradora.");
+
+        // Verifica o algoritmo antes de iniciar as threads
+        KeyPairGenerator.getInstance(algorithm);
+
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.generatorThreads = generatorThreads;
+        this.pairs = new LinkedBlockingQueue<>(highWatermark);
+    }
+
+    // Inicia as threads geradoras, que enchem o pool até a marca superior
+    public synchronized void start() {
+        if (running)
+            return;
+
+        running = true;
+        generators = new Thread[generatorThreads];
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < generatorThreads; i++) {
+            generators[i] = new Thread(this::fillLoop, "pool-chaves-" + algorithm + "-" + counter.incrementAndGet());
+            generators[i].setDaemon(true);
+            generators[i].setPriority(Thread.MIN_PRIORITY);
+            generators[i].start();
+        }
+    }
+
+    // Encerra as threads geradoras e descarta os pares que ainda estavam no pool
+    public synchronized void shutdown() {
+        if (!running)
+            return;
+
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        for (Thread generator : generators)
+            generator.interrupt();
+        pairs.clear();
+    }
+
+    /*
+        Retira um par de chaves do pool. Se houver um par pronto, conta um acerto; caso contrário, conta uma falha e gera o par na thread
+        atual, para que a conexão nunca fique bloqueada esperando as threads geradoras. Se o pool ficar abaixo da marca inferior, as threads
+        geradoras são acordadas para reabastecê-lo.
+    */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair keyPair = pairs.poll();
+        if (keyPair != null)
+            hits.increment();
+        else
+            misses.increment();
+
+        if (pairs.size() < lowWatermark || keyPair == null) {
+            synchronized (signal) {
+                refilling = true;
+                signal.notifyAll();
+            }
+        }
+
+        return keyPair != null ? keyPair : generate();
+    }
+
+    // Loop das threads geradoras: dorme enquanto o pool estiver abastecido e gera pares até a marca superior quando acordada
+    private void fillLoop() {
+        try {
+            while (running) {
+                synchronized (signal) {
+                    while (running && !refilling)
+                        signal.wait();
+                }
+                if (!running)
+                    return;
+
+                KeyPair keyPair = generate();
+                if (!pairs.offer(keyPair) || pairs.size() >= highWatermark) {
+                    synchronized (signal) {
+                        refilling = false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // O pool foi encerrado
+        } catch (NoSuchAlgorithmException e) {
+            System.out.println("Erro no pool de chaves: " + e.getMessage());
+        }
+    }
+
+    private KeyPair generate() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm);
+        // Algoritmos como o X25519 já definem o tamanho da chave e usam keySize = 0
+        if (keySize > 0)
+            keyPairGenerator.initialize(keySize);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    // Quantidade de pares prontos no pool neste momento
+    public int size() {
+        return pairs.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Pool de chaves " + algorithm + ": " + size() + " prontas (marcas " + lowWatermark + "/" + highWatermark + "), "
+                + getHits() + " acertos, " + getMisses() + " falhas";
+    }
+}
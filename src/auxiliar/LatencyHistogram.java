@@ -0,0 +1,111 @@
+package auxiliar;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    A classe LatencyHistogram registra tempos (em nanossegundos) e calcula percentis (p50, p99, p99.9) sem guardar cada medida.
+
+    Os tempos são agrupados em faixas logarítmicas: cada potência de dois é dividida em 128 faixas iguais, então o erro de cada percentil
+    fica abaixo de 1% do valor, de nanossegundos até horas, com memória fixa (cerca de 57 KB) independentemente da quantidade de medidas.
+
+    O histograma não é sincronizado: cada thread registra no seu próprio histograma, e os histogramas são somados com merge() no final.
+*/
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    // Registra um tempo em nanossegundos; valores negativos são tratados como zero
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[index(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    // Soma as medidas de outro histograma a este
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /*
+        Faixa de um valor: valores menores que 128 têm uma faixa cada; acima disso, o expoente da potência de dois escolhe o grupo e os 7
+        bits seguintes ao bit mais alto escolhem a faixa dentro do grupo.
+    */
+    private static int index(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int group = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return group * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Maior valor que cai na faixa informada
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int group = index / SUB_BUCKET_COUNT;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << (group - 1)) - 1;
+    }
+
+    // Valor abaixo do qual está a porcentagem informada das medidas (por exemplo 99.9), em nanossegundos
+    public long percentile(double percentile) {
+        if (totalCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestValue(i), max);
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    // Soma de todas as medidas, em nanossegundos
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    // Resumo em milissegundos: quantidade, média, p50, p99, p99.9 e máximo
+    @Override
+    public String toString() {
+        return String.format("%d medidas, média %.3f ms, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, máx %.3f ms",
+                totalCount, millis(getMean()), millis(percentile(50)), millis(percentile(99)), millis(percentile(99.9)), millis(max));
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,177 @@
+package auxiliar;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+/*
+    A classe SessionCipher criptografa e descriptografa as mensagens de uma sessão reaproveitando os objetos entre as mensagens.
+
+    Os métodos encrypt/decrypt do CipherSuite recebem e retornam arrays novos, e cada chamada cria e inicializa um objeto Cipher. Com muitas
+    mensagens por segundo, esse lixo aumenta a frequência das pausas do coletor de lixo. Aqui:
+        1- Os objetos Cipher de criptografia e de descriptografia são criados uma única vez por sessão e apenas reinicializados com o nonce
+           de cada mensagem (o DES, que não usa nonce, é inicializado uma única vez).
+        2- Os dados são lidos e escritos em ByteBuffers fornecidos por quem chama (que podem ser diretos), ou em buffers internos
+           reaproveitados entre as mensagens.
+        3- Os textos são convertidos de e para UTF-8 explicitamente, com codificadores reaproveitados, em vez do charset padrão da plataforma.
+
+    O formato das mensagens é o mesmo do CipherSuite (nonce de 12 bytes, texto cifrado e etiqueta de autenticação), então os dois lados não
+    precisam usar a mesma classe. O nonce de criptografia é formado por 4 bytes aleatórios, sorteados na criação do objeto, seguidos de um
+    contador de 8 bytes, que nunca se repete durante a sessão (ao contrário de um nonce totalmente aleatório, que pode se repetir).
+
+    A chave pode ser trocada no meio da sessão com updateKey (catraca de chaves, CipherSuite.nextKey): os mesmos objetos Cipher são apenas
+    reinicializados com a nova chave, e o contador do nonce continua de onde estava.
+
+    O que ainda é alocado a cada mensagem fica dentro da implementação das cifras da JVM (os parâmetros do nonce e os buffers internos do
+    GCM, por exemplo), e não pode ser evitado pela API do Cipher.
+
+    Um objeto SessionCipher não é thread-safe: cada sessão (ou cada thread) usa o seu próprio objeto. Os buffers retornados por decrypt e
+    decryptText só valem até a próxima chamada.
+*/
+public class SessionCipher {
+    private static final int NONCE_PREFIX_LENGTH = 4;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CipherSuite cipherSuite;
+    private SecretKey secretKey;
+    private final Cipher encryptCipher;
+    private final Cipher decryptCipher;
+    private final byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+    private final byte[] receivedNonce = new byte[CipherSuite.NONCE_LENGTH];
+    private final ByteBuffer counter = ByteBuffer.wrap(nonce, NONCE_PREFIX_LENGTH, 8).slice();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private long messageCount;
+    private ByteBuffer plaintextBuffer = ByteBuffer.allocate(256);
+    private CharBuffer textBuffer = CharBuffer.allocate(256);
+
+    public SessionCipher(CipherSuite cipherSuite, SecretKey secretKey) throws GeneralSecurityException {
+        this.cipherSuite = cipherSuite;
+        this.secretKey = secretKey;
+        this.encryptCipher = Cipher.getInstance(cipherSuite.getTransformation());
+        this.decryptCipher = Cipher.getInstance(cipherSuite.getTransformation());
+        if (cipherSuite.isAead()) {
+            RANDOM.nextBytes(nonce);
+        } else {
+            encryptCipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            decryptCipher.init(Cipher.DECRYPT_MODE, secretKey);
+        }
+    }
+
+    // Passa a usar a nova chave nas próximas mensagens, nos dois sentidos
+    public void updateKey(SecretKey newKey) throws GeneralSecurityException {
+        secretKey = newKey;
+        if (!cipherSuite.isAead()) {
+            encryptCipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            decryptCipher.init(Cipher.DECRYPT_MODE, secretKey);
+        }
+    }
+
+    public CipherSuite getCipherSuite() {
+        return cipherSuite;
+    }
+
+    // Tamanho da mensagem criptografada para uma mensagem com o tamanho informado
+    public int encryptedLength(int plaintextLength) {
+        if (cipherSuite.isAead())
+            return CipherSuite.NONCE_LENGTH + plaintextLength + CipherSuite.TAG_LENGTH;
+        return (plaintextLength / 8 + 1) * 8;// DES/ECB com PKCS5Padding: sempre acrescenta de 1 a 8 bytes
+    }
+
+    /*
+        Criptografa o conteúdo restante de plaintext e escreve o resultado em output (nonce, texto cifrado e etiqueta). Retorna a quantidade
+        de bytes escritos. Lança ShortBufferException se output não tiver espaço para encryptedLength(plaintext.remaining()) bytes.
+    */
+    public int encrypt(ByteBuffer plaintext, ByteBuffer output) throws GeneralSecurityException {
+        int length = encryptedLength(plaintext.remaining());
+        if (output.remaining() < length)
+            throw new ShortBufferException("Espaço insuficiente para a mensagem criptografada: " + length + " bytes.");
+
+        if (cipherSuite.isAead()) {
+            counter.putLong(0, messageCount++);
+            encryptCipher.init(Cipher.ENCRYPT_MODE, secretKey, cipherSuite.parameters(nonce));
+            output.put(nonce);
+        }
+        return (cipherSuite.isAead() ? CipherSuite.NONCE_LENGTH : 0) + encryptCipher.doFinal(plaintext, output);
+    }
+
+    // Codifica o texto em UTF-8 e o criptografa em output; retorna a quantidade de bytes escritos
+    public int encrypt(CharSequence text, ByteBuffer output) throws GeneralSecurityException {
+        return encrypt(encodeText(text), output);
+    }
+
+    /*
+        Descriptografa o conteúdo restante de ciphertext e escreve o resultado em output. Retorna a quantidade de bytes escritos. Nas cifras
+        AEAD lança AEADBadTagException se a mensagem tiver sido alterada. output precisa ter espaço para ciphertext.remaining() bytes.
+    */
+    public int decrypt(ByteBuffer ciphertext, ByteBuffer output) throws GeneralSecurityException {
+        if (cipherSuite.isAead()) {
+            if (ciphertext.remaining() < CipherSuite.NONCE_LENGTH + CipherSuite.TAG_LENGTH)
+                throw new GeneralSecurityException("Mensagem criptografada muito curta.");
+            ciphertext.get(receivedNonce);
+            decryptCipher.init(Cipher.DECRYPT_MODE, secretKey, cipherSuite.parameters(receivedNonce));
+            return decryptCipher.doFinal(ciphertext, output);
+        }
+
+        try {
+            return decryptCipher.doFinal(ciphertext, output);
+        } catch (GeneralSecurityException e) {
+            decryptCipher.init(Cipher.DECRYPT_MODE, secretKey);// O DES só é inicializado na criação; garante o estado após a falha
+            throw e;
+        }
+    }
+
+    // Descriptografa o conteúdo restante de ciphertext em um buffer interno, retornado pronto para leitura
+    public ByteBuffer decrypt(ByteBuffer ciphertext) throws GeneralSecurityException {
+        plaintextBuffer = ensureCapacity(plaintextBuffer, ciphertext.remaining());
+        plaintextBuffer.clear();
+        decrypt(ciphertext, plaintextBuffer);
+        return plaintextBuffer.flip();
+    }
+
+    // Descriptografa o conteúdo restante de ciphertext e decodifica o resultado como texto UTF-8, em um buffer interno
+    public CharBuffer decryptText(ByteBuffer ciphertext) throws GeneralSecurityException {
+        ByteBuffer plaintext = decrypt(ciphertext);
+        textBuffer = ensureCapacity(textBuffer, plaintext.remaining());// Cada caractere ocupa pelo menos 1 byte em UTF-8
+        textBuffer.clear();
+        decoder.reset();
+        decoder.decode(plaintext, textBuffer, true);
+        decoder.flush(textBuffer);
+        return textBuffer.flip();
+    }
+
+    // Codifica o texto em UTF-8 no buffer interno, retornado pronto para leitura
+    private ByteBuffer encodeText(CharSequence text) {
+        plaintextBuffer = ensureCapacity(plaintextBuffer, (int) Math.ceil(text.length() * (double) encoder.maxBytesPerChar()));
+        plaintextBuffer.clear();
+        encoder.reset();
+        // O texto é copiado para o buffer de caracteres reaproveitado: o codificador é bem mais rápido com um buffer baseado em array
+        textBuffer = ensureCapacity(textBuffer, text.length());
+        textBuffer.clear();
+        textBuffer.append(text).flip();
+        encoder.encode(textBuffer, plaintextBuffer, true);// Caracteres inválidos são substituídos, então não há erro
+        encoder.flush(plaintextBuffer);
+        return plaintextBuffer.flip();
+    }
+
+    // Os buffers internos crescem até o tamanho da maior mensagem da sessão e depois são reaproveitados
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        return buffer.capacity() >= capacity ? buffer : ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+    }
+
+    private static CharBuffer ensureCapacity(CharBuffer buffer, int capacity) {
+        return buffer.capacity() >= capacity ? buffer : CharBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+    }
+}
@@ -0,0 +1,211 @@
+package conexao;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+    A classe AdmissionControl protege o servidor contra sobrecarga. Cada troca de chaves completa gera (ou retira do pool) um par de chaves e
+    calcula o acordo de chaves, as operações mais caras do sistema, e antes cada conexão aceita começava uma troca de chaves imediatamente.
+    Uma rajada de conexões ocupava todos os núcleos, e um cliente que nunca enviava a sua chave pública prendia uma thread para sempre.
+
+    1- Limite por endereço: cada endereço IP de origem tem um balde de fichas (token bucket), reabastecido com a taxa configurada de conexões
+       por segundo até o tamanho da rajada. Uma conexão sem ficha disponível é recusada logo depois do accept(), sem ocupar uma thread.
+       Os baldes cheios (endereços inativos) são descartados a cada segundo pela thread de prazos, nunca no accept(). A tabela tem um
+       tamanho máximo: com ela cheia, a conexão de um endereço novo é recusada até o próximo descarte, em vez de a tabela crescer sem
+       limite com conexões vindas de muitos endereços diferentes.
+    2- Limite de conexões: com todas as vagas do ServerEngine ocupadas, a conexão nova é recusada em vez de esperar na fila do sistema
+       operacional por um tempo indefinido.
+    3- Trocas de chaves simultâneas: no máximo o número configurado de trocas de chaves completas é calculado ao mesmo tempo. Uma troca de
+       chaves que não consegue uma vaga dentro do tempo de espera configurado é recusada. As retomadas de sessão, que só usam o HKDF, não
+       passam por esse limite.
+    4- Prazos: a troca de chaves inteira (desde a conexão até a sessão estabelecida) tem um prazo; ao fim dele a conexão é fechada, mesmo que
+       o cliente continue enviando bytes aos poucos. Cada leitura também tem esse tempo limite, e depois da troca de chaves as leituras da
+       sessão usam o tempo de ociosidade configurado (0 espera para sempre).
+
+    As conexões recusadas recebem o quadro BUSY, com o motivo e o tempo sugerido para tentar de novo, e são fechadas. Assim o servidor
+    descarta o excesso de carga rapidamente e as sessões admitidas mantêm uma latência previsível.
+*/
+public class AdmissionControl {
+    // Quantidade máxima de endereços acompanhados e intervalo do descarte dos baldes cheios
+    private static final int MAX_TRACKED_SOURCES = 10000;
+    private static final long PRUNE_INTERVAL_MILLIS = 1000;
+
+    private final int maxHandshakes;
+    private final Semaphore handshakeSlots;
+    private final long handshakeWaitMillis;
+    private final long handshakeTimeoutMillis;
+    private final int sessionIdleMillis;
+    private final double connectionsPerSecond;
+    private final int burst;
+    private final Map<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor deadlines;
+
+    /*
+        maxHandshakes: trocas de chaves completas calculadas ao mesmo tempo.
+        handshakeWaitMillis: tempo máximo de espera por uma vaga de troca de chaves antes de recusar a conexão.
+        handshakeTimeoutMillis: prazo da troca de chaves, desde a conexão até a sessão estabelecida.
+        sessionIdleMillis: tempo limite de cada leitura depois da troca de chaves (0 espera para sempre).
+        connectionsPerSecond / burst: taxa e rajada de conexões aceitas de cada endereço IP (taxa 0 desativa o limite por endereço).
+    */
+    public AdmissionControl(int maxHandshakes, long handshakeWaitMillis, long handshakeTimeoutMillis, int sessionIdleMillis,
+            double connectionsPerSecond, int burst) {
+        if (maxHandshakes < 1)
+            throw new IllegalArgumentException("O número de trocas de chaves simultâneas deve ser maior que zero.");
+        if (handshakeWaitMillis < 0 || handshakeTimeoutMillis < 1 || handshakeTimeoutMillis > Integer.MAX_VALUE || sessionIdleMillis < 0)
+            throw new IllegalArgumentException("Tempos de espera inválidos.");
+        if (connectionsPerSecond < 0 || burst < 1)
+            throw new IllegalArgumentException("A taxa de conexões por endereço não pode ser negativa e a rajada deve ser maior que zero.");
+
+        this.maxHandshakes = maxHandshakes;
+        this.handshakeSlots = new Semaphore(maxHandshakes);
+        this.handshakeWaitMillis = handshakeWaitMillis;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.sessionIdleMillis = sessionIdleMillis;
+        this.connectionsPerSecond = connectionsPerSecond;
+        this.burst = burst;
+
+        // Uma única thread fecha as conexões com o prazo vencido; os prazos cancelados são retirados da fila na hora
+        this.deadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "servidor-prazos");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deadlines.setRemoveOnCancelPolicy(true);
+        if (connectionsPerSecond > 0)
+            this.deadlines.scheduleWithFixedDelay(this::pruneSources, PRUNE_INTERVAL_MILLIS, PRUNE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+        Retira uma ficha do balde do endereço de origem. Retorna 0 se a conexão foi admitida, ou o tempo em milissegundos até a próxima
+        ficha, informado ao cliente recusado. Um endereço novo com a tabela cheia espera o próximo descarte. Os aceitadores que passam pela
+        verificação do tamanho ao mesmo tempo podem ultrapassar o limite em no máximo um endereço cada.
+    */
+    public long admitSource(InetAddress address) {
+        if (connectionsPerSecond == 0)
+            return 0;
+
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(address);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_TRACKED_SOURCES)
+                return PRUNE_INTERVAL_MILLIS;
+            bucket = buckets.computeIfAbsent(address, key -> new TokenBucket(now));
+        }
+        return bucket.take(now);
+    }
+
+    // Descarta os baldes cheios: o endereço ficou inativo tempo suficiente para recuperar a rajada inteira e recomeça do zero
+    private void pruneSources() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    /*
+        Reserva uma vaga para uma troca de chaves completa, esperando no máximo o tempo configurado. Retorna false se o servidor continuar
+        ocupado; nesse caso a conexão deve ser recusada. Cada vaga reservada deve ser devolvida com releaseHandshake().
+    */
+    public boolean acquireHandshake() throws InterruptedException {
+        return handshakeSlots.tryAcquire(handshakeWaitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void releaseHandshake() {
+        handshakeSlots.release();
+    }
+
+    /*
+        Aplica o tempo limite de leitura e inicia o prazo da troca de chaves da conexão. Quando o prazo vence antes de cancel(), o socket é
+        fechado pela thread de prazos, o que interrompe qualquer leitura ou escrita em andamento na thread da conexão.
+    */
+    public Deadline startHandshake(Socket socket) throws IOException {
+        socket.setSoTimeout((int) handshakeTimeoutMillis);
+        return new Deadline(socket);
+    }
+
+    // Encerra o prazo da troca de chaves e passa a usar o tempo de ociosidade da sessão nas leituras
+    public void startSession(Deadline deadline, Socket socket) throws IOException {
+        deadline.cancel();
+        socket.setSoTimeout(sessionIdleMillis);
+    }
+
+    // Tempo sugerido ao cliente recusado por falta de vagas para tentar de novo
+    public long getRetryAfterMillis() {
+        return Math.max(100, handshakeWaitMillis);
+    }
+
+    public int getMaxHandshakes() {
+        return maxHandshakes;
+    }
+
+    // Trocas de chaves completas sendo calculadas neste momento
+    public int getActiveHandshakes() {
+        return maxHandshakes - handshakeSlots.availablePermits();
+    }
+
+    // Endereços de origem acompanhados pelo limite por endereço
+    public int getTrackedSources() {
+        return buckets.size();
+    }
+
+    // Prazo da troca de chaves de uma conexão
+    public final class Deadline {
+        private final ScheduledFuture<?> task;
+        private volatile boolean expired;
+
+        private Deadline(Socket socket) {
+            this.task = deadlines.schedule(() -> {
+                expired = true;
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // A conexão já estava fechada
+                }
+            }, handshakeTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public void cancel() {
+            task.cancel(false);
+        }
+
+        // Indica se a conexão foi fechada por ter vencido o prazo
+        public boolean hasExpired() {
+            return expired;
+        }
+    }
+
+    // Balde de fichas de um endereço de origem, reabastecido continuamente com a taxa configurada até o tamanho da rajada
+    private final class TokenBucket {
+        private double tokens;
+        private long updatedAt;
+
+        private TokenBucket(long now) {
+            this.tokens = burst;
+            this.updatedAt = now;
+        }
+
+        synchronized long take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / connectionsPerSecond));
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - updatedAt) / 1e9 * connectionsPerSecond);
+            updatedAt = now;
+        }
+    }
+}
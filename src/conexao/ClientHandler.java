@@ -0,0 +1,690 @@
+package conexao;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.SecretKey;
+
+import auxiliar.ChunkedCipher;
+import auxiliar.CipherSuite;
+import auxiliar.KeyExchange;
+import auxiliar.KeyExchanges;
+import auxiliar.SessionCipher;
+
+/*
+    A classe ClientHandler contém a lógica de comunicação com um único cliente, que antes ficava dentro do loop principal do TCPServer.
+
+    Cada conexão aceita pelo ServerEngine é entregue a um objeto ClientHandler, que é executado em uma thread do pool de trabalhadores. Assim, um
+    cliente lento ocupa apenas a sua própria thread e não impede que os outros clientes sejam atendidos.
+
+    As etapas da comunicação são as mesmas de antes:
+        - Solicita ao cliente uma porta de entrada e envia a mensagem de configuração, com a porta em que a sessão vai continuar.
+        - Negocia o algoritmo de troca de chaves (Diffie-Hellman clássico ou sobre curvas elípticas) e a cifra simétrica da sessão, e realiza a
+          troca de chaves com o cliente, ou retoma uma sessão anterior a partir de um bilhete guardado no cache de sessões. Com o controle de
+          admissão do contexto, a troca de chaves completa só é calculada com uma vaga livre (senão o cliente recebe o quadro BUSY) e tudo
+          isso precisa terminar dentro do prazo da troca de chaves.
+        - Recebe as mensagens criptografadas da sessão, descriptografa-as e envia a resposta de cada uma ao cliente. As mensagens enviadas
+          em sequência (pipelining) são processadas em lotes, com uma única confirmação cumulativa por lote.
+        - Troca a chave da sessão pela próxima chave da catraca quando o cliente envia o quadro KEY_UPDATE.
+        - Recebe arquivos enviados em blocos criptografados e os grava na pasta de arquivos recebidos.
+        - Fecha a conexão quando o cliente encerra a sessão.
+
+    Com a porta de dados configurada (classe SessionHandoff) e um cliente que aceita o canal de dados, a conexão de entrada só faz a troca
+    de chaves: a sessão estabelecida é registrada com a ficha entregue ao cliente e continua, a partir do recebimento das mensagens, na
+    thread que aceitou a conexão de dados do cliente (continueOn).
+
+    Todas as informações são trocadas em quadros binários (classes Protocol e FrameChannel).
+*/
+public class ClientHandler implements Runnable {
+    // Maior quantidade de mensagens em sequência processadas antes de enviar uma confirmação
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /*
+        Maior bloco de arquivo aceito. Cada bloco em processamento ocupa um buffer de entrada e um de saída do tamanho do bloco, então o
+        tamanho escolhido pelo cliente é limitado ao dos clientes deste projeto, para manter a memória de cada transferência pequena.
+    */
+    private static final int MAX_FILE_CHUNK_SIZE = ChunkedCipher.DEFAULT_CHUNK_SIZE;
+
+    private final Socket clientSocket;
+    private final String clientAddress;
+    private final ServerContext context;
+    private final ServerMetrics metrics;
+    private final boolean verbose;
+
+    // Cifra e chave da sessão, definidas pela troca de chaves completa ou pela retomada de sessão
+    private CipherSuite cipherSuite;
+    private SecretKey sharedSecret;
+
+    // Cifra das mensagens da sessão, com os objetos Cipher e os buffers reaproveitados entre as mensagens
+    private SessionCipher sessionCipher;
+
+    // Geração da chave da sessão: 0 é a chave da troca de chaves (ou da retomada), e cada KEY_UPDATE avança uma geração
+    private long keyGeneration;
+
+    // Prazo da troca de chaves (com o controle de admissão) e a indicação de sessão estabelecida, usados para classificar os tempos esgotados
+    private AdmissionControl.Deadline handshakeDeadline;
+    private boolean sessionEstablished;
+
+    // Ficha da transferência da sessão para a porta de dados e o bilhete de retomada, enviado pela conexão de dados quando ela existe
+    private SessionHandoff sessionHandoff;
+    private byte[] handoffToken;
+    private boolean handedOff;
+    private ByteBuffer pendingTicket;
+
+    // Número de sequência esperado na próxima mensagem em sequência, e o quadro lido depois do fim de um lote, ainda não tratado
+    private long nextSequence;
+    private FrameChannel.Frame pendingFrame;
+
+    // O contexto traz os recursos compartilhados entre as conexões, como os pools de chaves
+    public ClientHandler(Socket clientSocket, ServerContext context) {
+        this.clientSocket = clientSocket;
+        this.context = context;
+        this.metrics = context.getMetrics();
+        this.verbose = context.isVerbose();
+        this.clientAddress = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+    }
+
+    @Override
+    public void run() {
+        serve(clientSocket, () -> {
+            try {
+                handle();
+            } finally {
+                // Uma troca de chaves que não terminou libera a conexão de dados que estiver esperando pela sessão
+                if (handoffToken != null && !handedOff)
+                    sessionHandoff.cancel(handoffToken);
+            }
+        });
+    }
+
+    /*
+        Continua na conexão de dados a sessão estabelecida na conexão de entrada, a partir do loop da sessão. Chamado pela thread que aceitou
+        a conexão de dados (classe DataChannelHandler), depois de retirar esta sessão da ficha apresentada pelo cliente.
+    */
+    void continueOn(Socket dataSocket, FrameChannel channel) {
+        serve(dataSocket, () -> {
+            try {
+                if (pendingTicket != null)
+                    channel.write(Protocol.SESSION_TICKET, pendingTicket);
+                pendingTicket = null;
+                channel.setMaxPayloadLength(Protocol.MAX_PAYLOAD_LENGTH);
+                session(channel);
+            } finally {
+                metrics.sessionEnded();
+            }
+        });
+    }
+
+    // Encerra a sessão registrada para transferência cujo cliente não se conectou à porta de dados dentro do prazo da ficha
+    void abandon() {
+        metrics.sessionEnded();
+        metrics.handoffExpired();
+        log("O cliente não se conectou à porta de dados dentro do prazo.");
+    }
+
+    // Uma etapa do atendimento executada por serve()
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    // Executa uma etapa do atendimento no socket informado, classificando os erros e os tempos esgotados, e fecha o socket no final
+    private void serve(Socket socket, Step step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            if (e instanceof SocketTimeoutException || (handshakeDeadline != null && handshakeDeadline.hasExpired())) {
+                // Tempo esgotado: um cliente lento ou parado, e não um erro de comunicação
+                if (sessionEstablished)
+                    metrics.sessionTimedOut();
+                else
+                    metrics.handshakeTimedOut();
+                log("Tempo esgotado " + (sessionEstablished ? "aguardando o cliente." : "na troca de chaves."));
+            } else {
+                metrics.communicationError();
+                System.out.println("[" + clientAddress + "] Erro na comunicação: " + e.getMessage());
+            }
+        } finally {
+            if (handshakeDeadline != null)
+                handshakeDeadline.cancel();
+            // Fecha a conexão
+            try {
+                socket.close();
+            } catch (Exception e) {
+                // A conexão já estava fechada
+            }
+        }
+    }
+
+    private void handle() throws Exception {
+        long connectedAt = System.nanoTime();
+        log("Cliente conectado.");
+
+        // O prazo vale desde a conexão: um cliente que demora a enviar o HELLO ou a chave pública também é desconectado
+        AdmissionControl admissionControl = context.getAdmissionControl();
+        if (admissionControl != null)
+            handshakeDeadline = admissionControl.startHandshake(clientSocket);
+
+        /*
+            Um objeto FrameChannel é criado para ler e escrever os quadros binários do protocolo (classe Protocol) através da conexão com o
+            cliente. Ele substitui o BufferedReader e o PrintWriter usados antes, que trocavam linhas de texto.
+            Até a sessão ser estabelecida, o cliente ainda não foi autenticado e só são aceitos quadros pequenos.
+        */
+        FrameChannel channel = new FrameChannel(clientSocket);
+        channel.setMaxPayloadLength(Protocol.MAX_HANDSHAKE_PAYLOAD_LENGTH);
+
+        /*
+            Solicita a porta de entrada ao cliente. No quadro HELLO o cliente envia a porta de entrada, a lista de algoritmos de troca de chaves
+            e a lista de cifras que suporta, e o servidor escolhe o algoritmo e a cifra da sessão.
+            Se o cliente tiver um bilhete de retomada, ele envia o quadro RESUME em vez do HELLO. Quando o bilhete ainda está no cache de
+            sessões, a sessão é retomada sem uma nova troca de chaves; caso contrário, o cliente recebe RESUME_REJECTED e envia o HELLO.
+        */
+        channel.write(Protocol.PORT_REQUEST, Protocol.text("Digite a porta de entrada: "));
+        FrameChannel.Frame frame = channel.expect(Protocol.HELLO, Protocol.RESUME);
+        boolean resumed = frame.getType() == Protocol.RESUME && resume(frame.getPayload(), channel);
+        if (!resumed) {
+            if (frame.getType() == Protocol.RESUME)
+                frame = channel.expect(Protocol.HELLO);
+            if (!admitHandshake(admissionControl, channel))
+                return;
+            try {
+                handshake(frame.getPayload(), channel);
+            } finally {
+                if (admissionControl != null)
+                    admissionControl.releaseHandshake();
+            }
+        }
+        if (admissionControl != null)
+            admissionControl.startSession(handshakeDeadline, clientSocket);
+        sessionEstablished = true;
+        sessionCipher = new SessionCipher(cipherSuite, sharedSecret);
+        metrics.sessionStarted(resumed, System.nanoTime() - connectedAt);
+
+        // Com o canal de dados, a sessão continua na conexão de dados do cliente e esta conexão é fechada
+        if (handoffToken != null) {
+            handedOff = sessionHandoff.offer(handoffToken, this);
+            if (handedOff) {
+                log("Sessão transferida para a porta de dados " + sessionHandoff.getPort() + ".");
+            } else {
+                metrics.sessionEnded();
+                metrics.handoffExpired();
+                log("A ficha de transferência venceu antes do fim da troca de chaves.");
+            }
+            return;
+        }
+
+        try {
+            channel.setMaxPayloadLength(Protocol.MAX_PAYLOAD_LENGTH);
+            session(channel);
+        } finally {
+            metrics.sessionEnded();
+        }
+    }
+
+    /*
+        Loop da sessão: o servidor recebe quadros do cliente até receber o quadro de encerramento ou até o cliente fechar a conexão.
+        Cada mensagem criptografada é descriptografada com o segredo compartilhado da sessão e respondida individualmente; as mensagens em
+        sequência são respondidas por lote (receiveBatch).
+    */
+    private void session(FrameChannel channel) throws IOException {
+        FrameChannel.Frame frame;
+        while ((frame = nextFrame(channel)) != null) {
+            switch (frame.getType()) {
+                case Protocol.MESSAGE:
+                    receiveMessage(frame.getPayload(), channel);
+                    break;
+                case Protocol.SEQUENCED_MESSAGE:
+                    receiveBatch(frame, channel);
+                    break;
+                case Protocol.KEY_UPDATE:
+                    updateKey(frame.getPayload());
+                    break;
+                case Protocol.FILE_START:
+                    receiveFile(cipherSuite, sharedSecret, frame.getPayload(), channel);
+                    break;
+                case Protocol.CLOSE:
+                    channel.write(Protocol.RESPONSE, Protocol.response(Protocol.STATUS_CLOSED, Protocol.RESPONSE_CLOSED));
+                    log("Sessão encerrada pelo cliente.");
+                    return;
+                default:
+                    channel.write(Protocol.ERROR, Protocol.text("Quadro inesperado: tipo " + frame.getType()));
+                    log("Quadro inesperado recebido: tipo " + frame.getType());
+                    return;
+            }
+        }
+        log(context.isDraining() ? "Sessão encerrada pelo encerramento do servidor." : "Cliente desconectado.");
+    }
+
+    /*
+        Próximo quadro da sessão: o que encerrou o último lote, se houver, ou um novo quadro lido do cliente. Sem nada recebido para ler,
+        a sessão fica registrada como ociosa durante a espera, para ser encerrada se o servidor começar a encerrar (retorna null).
+    */
+    private FrameChannel.Frame nextFrame(FrameChannel channel) throws IOException {
+        FrameChannel.Frame frame = pendingFrame;
+        pendingFrame = null;
+        if (frame != null || channel.hasBufferedInput())
+            return frame != null ? frame : channel.readReusingBuffer();
+
+        if (!context.enterIdle(channel))
+            return null;
+        try {
+            return channel.readReusingBuffer();
+        } finally {
+            context.leaveIdle(channel);
+        }
+    }
+
+    /*
+        Processa um lote de mensagens em sequência, a partir da mensagem informada.
+
+        Depois de cada mensagem, as seguintes são processadas enquanto já houver dados recebidos do cliente (até MAX_BATCH_SIZE mensagens),
+        sem escrever nada no socket. No fim do lote é enviada uma única confirmação cumulativa com o número de sequência da última mensagem
+        e a quantidade de mensagens recusadas no lote. As atualizações de chave entre as mensagens são aplicadas sem encerrar o lote; um
+        quadro de outro tipo lido no meio do lote encerra o lote e é tratado em seguida.
+    */
+    private void receiveBatch(FrameChannel.Frame first, FrameChannel channel) throws IOException {
+        FrameChannel.Frame frame = first;
+        int batchSize = 0;
+        int rejected = 0;
+        while (true) {
+            ByteBuffer payload = frame.getPayload();
+            long sequence = payload.getLong();
+            if (sequence != nextSequence)
+                throw new IOException("Número de sequência inesperado: " + sequence + ", esperado " + nextSequence);
+            nextSequence++;
+            batchSize++;
+
+            if (!decryptMessage(payload))
+                rejected++;
+
+            if (batchSize == MAX_BATCH_SIZE || !channel.hasBufferedInput())
+                break;
+            frame = channel.readReusingBuffer();
+            // Uma atualização de chave no meio do lote é aplicada sem encerrar o lote: as mensagens seguintes já usam a nova chave
+            while (frame != null && frame.getType() == Protocol.KEY_UPDATE && channel.hasBufferedInput()) {
+                updateKey(frame.getPayload());
+                frame = channel.readReusingBuffer();
+            }
+            if (frame == null || frame.getType() != Protocol.SEQUENCED_MESSAGE) {
+                pendingFrame = frame;
+                break;
+            }
+        }
+
+        channel.write(Protocol.ACK, Protocol.ack(nextSequence - 1, rejected));
+        metrics.acknowledgementSent();
+        if (verbose)
+            log("Confirmação enviada ao cliente: " + batchSize + " mensagens até a sequência " + (nextSequence - 1) + ", " + rejected
+                    + " recusadas.");
+    }
+
+    /*
+        Reserva uma vaga para a troca de chaves completa, esperando no máximo o tempo configurado no controle de admissão. Sem vaga, o
+        cliente recebe o quadro BUSY no lugar do CONFIG e a conexão é encerrada antes de qualquer operação de chave. Retorna se a troca de
+        chaves pode continuar; nesse caso a vaga é devolvida pelo chamador.
+    */
+    private boolean admitHandshake(AdmissionControl admissionControl, FrameChannel channel) throws IOException, InterruptedException {
+        if (admissionControl == null || admissionControl.acquireHandshake())
+            return true;
+
+        metrics.handshakeShed();
+        channel.write(Protocol.BUSY, Protocol.busy(admissionControl.getRetryAfterMillis(), "nenhuma vaga para a troca de chaves."));
+        log("Troca de chaves recusada: servidor ocupado.");
+        return false;
+    }
+
+    /*
+        Avança a catraca de chaves: a chave da próxima geração é derivada da chave atual (CipherSuite.nextKey), a chave atual é descartada e
+        as próximas mensagens e arquivos da sessão usam a nova chave. Como os quadros chegam na ordem em que foram enviados, as mensagens
+        enviadas antes do KEY_UPDATE já foram descriptografadas com a chave anterior.
+    */
+    private void updateKey(ByteBuffer keyUpdate) throws IOException {
+        long generation = keyUpdate.getLong();
+        if (generation != keyGeneration + 1)
+            throw new IOException("Geração de chave inesperada: " + generation + ", esperada " + (keyGeneration + 1));
+
+        try {
+            sharedSecret = cipherSuite.nextKey(sharedSecret, generation);
+            sessionCipher.updateKey(sharedSecret);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Falha ao atualizar a chave da sessão.", e);
+        }
+        keyGeneration = generation;
+        metrics.keyUpdated();
+        if (verbose)
+            log("Chave da sessão atualizada para a geração " + generation + ".");
+    }
+
+    // Troca de chaves completa, a partir do quadro HELLO enviado pelo cliente
+    private void handshake(ByteBuffer hello, FrameChannel channel) throws Exception {
+        int entryPort = hello.getInt();
+        String keyExchangeName = KeyExchanges.negotiate(Protocol.getString(hello));
+        cipherSuite = CipherSuite.negotiate(Protocol.getString(hello));
+        boolean dataChannel = Protocol.getDataChannel(hello);
+        log("Porta de entrada recebida: " + entryPort);
+        log("Algoritmo de troca de chaves negociado: " + keyExchangeName);
+        log("Cifra negociada: " + cipherSuite.getName());
+
+        sendConfig(entryPort, dataChannel, channel);
+
+        /*
+            Um objeto KeyExchange do algoritmo negociado é criado, usando um par de chaves pronto do pool quando disponível.
+            A chave pública é obtida chamando o método getPublicKey() no objeto keyExchange.
+            A chave pública é enviada ao cliente no quadro SERVER_KEY, junto com o algoritmo e a cifra escolhidos, na codificação X.509 sem Base64.
+            A chave pública é exibida no console em Base64.
+        */
+        KeyExchange keyExchange = KeyExchanges.create(keyExchangeName, context.getKeyPairPools());
+        byte[] publicKeyBytes = keyExchange.getPublicKey().getEncoded();
+
+        channel.write(Protocol.SERVER_KEY, Protocol.serverKey(keyExchangeName, cipherSuite.getName(), publicKeyBytes));// Enviando Chave pública para o cliente
+        if (verbose) {
+            log("Chave pública enviada ao cliente: ");
+            System.out.println("\n \" " + Base64.getEncoder().encodeToString(publicKeyBytes) + " \" \n");
+        }
+
+        /*
+            O servidor lê a chave pública enviada pelo cliente no quadro CLIENT_KEY.
+            A chave pública recebida é reconstruída a partir dos bytes pelo método decodePublicKey() do algoritmo negociado
+            e armazenada na variável receivedPublicKey.
+        */
+        byte[] receivedPublicKeyBytes = Protocol.remaining(channel.expect(Protocol.CLIENT_KEY).getPayload());
+        PublicKey receivedPublicKey = keyExchange.decodePublicKey(receivedPublicKeyBytes);
+
+        /*
+            O servidor gera o segredo compartilhado chamando o método generateRawSecret(receivedPublicKey) no objeto keyExchange, e a chave da
+            sessão é derivada dele pela cifra negociada (HKDF-SHA256 nas cifras AEAD).
+            Uma mensagem indicando que o segredo compartilhado foi gerado e exibida no console.
+        */
+        long agreementStart = System.nanoTime();
+        byte[] rawSecret = keyExchange.generateRawSecret(receivedPublicKey);
+        sharedSecret = cipherSuite.deriveKey(rawSecret, keyExchangeName);
+        metrics.keyAgreement(System.nanoTime() - agreementStart);
+        log("Segredo compartilhado gerado.");
+
+        /*
+            Entrega ao cliente um bilhete de retomada no quadro SESSION_TICKET. O cliente só lê o bilhete junto com a primeira resposta, então
+            o envio não atrasa a primeira mensagem da sessão. Sem cache de sessões, o bilhete vai vazio. Quando a sessão vai ser transferida,
+            o bilhete é enviado pela conexão de dados, onde o cliente lê a primeira resposta.
+        */
+        SessionCache sessionCache = context.getSessionCache();
+        ByteBuffer sessionTicket;
+        if (sessionCache != null) {
+            SessionTicket ticket = issueTicket(sessionCache, SessionTicket.initialSecret(rawSecret), keyExchangeName);
+            sessionTicket = Protocol.sessionTicket(ticket.getId(), lifetimeSeconds(sessionCache));
+        } else {
+            sessionTicket = Protocol.sessionTicket(new byte[0], 0);
+        }
+        if (handoffToken != null)
+            pendingTicket = sessionTicket;
+        else
+            channel.write(Protocol.SESSION_TICKET, sessionTicket);
+    }
+
+    /*
+        Retomada de sessão a partir do quadro RESUME. O bilhete é retirado do cache (cada bilhete vale uma única vez) e a chave da sessão é
+        derivada do segredo de retomada e dos nonces do cliente e do servidor. Retorna false se o bilhete não for encontrado ou estiver
+        vencido; nesse caso o cliente recebe RESUME_REJECTED e a troca de chaves completa é feita em seguida.
+    */
+    private boolean resume(ByteBuffer resume, FrameChannel channel) throws Exception {
+        int entryPort = resume.getInt();
+        byte[] ticketId = Protocol.getBytes(resume);
+        byte[] clientNonce = Protocol.getBytes(resume);
+        boolean dataChannel = Protocol.getDataChannel(resume);
+
+        SessionCache sessionCache = context.getSessionCache();
+        SessionTicket ticket = sessionCache != null ? sessionCache.take(ticketId) : null;
+        if (ticket == null) {
+            channel.write(Protocol.RESUME_REJECTED);
+            log("Bilhete de retomada desconhecido ou vencido. Realizando a troca de chaves completa.");
+            return false;
+        }
+
+        log("Porta de entrada recebida: " + entryPort);
+        sendConfig(entryPort, dataChannel, channel);
+
+        byte[] serverNonce = SessionTicket.random(SessionTicket.NONCE_LENGTH);
+        cipherSuite = ticket.getCipherSuite();
+        sharedSecret = ticket.resumedKey(clientNonce, serverNonce);
+
+        SessionTicket next = issueTicket(sessionCache, ticket.nextSecret(clientNonce, serverNonce), ticket.getKeyExchangeName());
+        channel.write(Protocol.RESUME_ACCEPTED, Protocol.resumeAccepted(cipherSuite.getName(), serverNonce, next.getId(), lifetimeSeconds(sessionCache)));
+        log("Sessão retomada (" + ticket.getKeyExchangeName() + ", " + cipherSuite.getName() + ").");
+        return true;
+    }
+
+    /*
+        Gera a mensagem de configuração do servidor e a envia ao cliente. A porta de comunicação é a porta em que a sessão vai continuar: a
+        porta de dados, quando ela está configurada e o cliente aceita o canal de dados, ou a própria porta do servidor; a porta de entrada
+        pedida pelo cliente é só registrada. O cliente que aceita o canal de dados recebe em seguida o quadro HANDOFF, com a ficha de
+        transferência ou com a porta 0 quando o servidor não tem porta de dados.
+    */
+    private void sendConfig(int entryPort, boolean dataChannel, FrameChannel channel) throws IOException {
+        sessionHandoff = dataChannel ? context.getSessionHandoff() : null;
+        int port = sessionHandoff != null ? sessionHandoff.getPort() : clientSocket.getLocalPort();
+        String configMessage = "Porta de comunicação: " + port;
+        channel.write(Protocol.CONFIG, Protocol.text(configMessage));
+        log("Mensagem de configuração enviada ao cliente: " + configMessage);
+
+        if (sessionHandoff != null) {
+            handoffToken = sessionHandoff.issue();
+            channel.write(Protocol.HANDOFF, Protocol.handoff(port, handoffToken));
+        } else if (dataChannel) {
+            channel.write(Protocol.HANDOFF, Protocol.handoff(0, new byte[0]));
+        }
+    }
+
+    // Cria um bilhete novo para a sessão atual e o guarda no cache de sessões
+    private SessionTicket issueTicket(SessionCache sessionCache, byte[] resumptionSecret, String keyExchangeName) {
+        SessionTicket ticket = new SessionTicket(SessionTicket.random(SessionTicket.ID_LENGTH), resumptionSecret, cipherSuite, keyExchangeName,
+                System.currentTimeMillis() + sessionCache.getTtlMillis());
+        sessionCache.put(ticket);
+        return ticket;
+    }
+
+    // Tempo de vida dos bilhetes informado ao cliente, em segundos
+    private static int lifetimeSeconds(SessionCache sessionCache) {
+        return (int) Math.max(1, sessionCache.getTtlMillis() / 1000);
+    }
+
+    /*
+        Descriptografa uma mensagem da sessão e envia a resposta ao cliente.
+        Se a mensagem foi descriptografada, uma mensagem de sucesso é enviada ao cliente e uma mensagem de sucesso é exibida no console.
+        Caso contrário (inclusive quando a etiqueta de autenticação da cifra AEAD não confere, ou seja, o cliente usa outra chave), uma
+        mensagem indicando que a chave é diferente é enviada ao cliente e uma mensagem correspondente é exibida no console.
+    */
+    private void receiveMessage(ByteBuffer encryptedMessage, FrameChannel channel) throws IOException {
+        if (decryptMessage(encryptedMessage)) {
+            // Envia a mensagem de sucesso ao cliente
+            channel.write(Protocol.RESPONSE, Protocol.response(Protocol.STATUS_SUCCESS, Protocol.RESPONSE_SUCCESS));
+            log("Mensagem de sucesso enviada ao cliente.");
+        } else {
+            // Envia a mensagem de chave diferente ao cliente
+            channel.write(Protocol.RESPONSE, Protocol.response(Protocol.STATUS_WRONG_KEY, Protocol.RESPONSE_WRONG_KEY));
+            log("Mensagem de chave diferente enviada ao cliente.");
+        }
+    }
+
+    /*
+        Descriptografa uma mensagem da sessão e registra as métricas, retornando se a mensagem foi descriptografada. A mensagem é
+        descriptografada pelo SessionCipher direto do buffer do quadro para um buffer reaproveitado, sem criar arrays; o texto da mensagem só
+        é montado quando o registro detalhado está ativado, já que no restante do tempo ele não é usado pelo servidor.
+    */
+    private boolean decryptMessage(ByteBuffer encryptedMessage) {
+        int encryptedLength = encryptedMessage.remaining();
+        if (verbose) {
+            log("Mensagem criptografada recebida: ");
+            System.out.println("\n \" " + Base64.getEncoder().encodeToString(Protocol.remaining(encryptedMessage.duplicate())) + " \" \n");
+        }
+
+        try {
+            ByteBuffer decryptedMessage = sessionCipher.decrypt(encryptedMessage);
+            metrics.messageReceived(encryptedLength, decryptedMessage.remaining());
+            if (verbose)
+                log("Mensagem descriptografada: " + StandardCharsets.UTF_8.decode(decryptedMessage));
+            return true;
+        } catch (GeneralSecurityException e) {
+            metrics.messageReceived(encryptedLength, 0);
+            metrics.decryptionFailed();
+            if (verbose)
+                log("Falha ao descriptografar a mensagem: " + e);
+            return false;
+        }
+    }
+
+    /*
+        Recebe um arquivo enviado em blocos criptografados (classe ChunkedCipher) e o grava na pasta de arquivos recebidos.
+
+        Cada bloco é descriptografado e gravado diretamente em um FileChannel assim que chega, então a memória usada não depende do tamanho
+        do arquivo. Com o pool de criptografia em blocos do contexto, vários blocos são descriptografados ao mesmo tempo nas threads do
+        pool enquanto os próximos são recebidos, e gravados na ordem. Cada transferência é gravada em um arquivo temporário próprio (com a
+        extensão ".parcial"), então duas sessões que enviam arquivos com o mesmo nome ao mesmo tempo não se misturam. O arquivo só recebe
+        o nome final depois que o último bloco é autenticado; se algum bloco falhar na autenticação, o arquivo temporário é apagado e o
+        cliente recebe a resposta de chave diferente.
+
+        Um arquivo já recebido nunca é substituído: se o nome já existe, a transferência é recusada com ERROR antes de qualquer gravação,
+        e se outra sessão gravar o mesmo nome durante a transferência, o arquivo recebido por último é descartado (publish). O nome
+        inválido e o tamanho de bloco fora do limite também são recusados com ERROR, antes de qualquer buffer ser criado.
+    */
+    private void receiveFile(CipherSuite cipherSuite, SecretKey sharedSecret, ByteBuffer fileStart, FrameChannel channel) throws IOException {
+        // Usa apenas o nome do arquivo, descartando qualquer caminho enviado pelo cliente
+        Path fileName = fileName(Protocol.getString(fileStart));
+        byte[] salt = Protocol.getBytes(fileStart);
+        int chunkSize = fileStart.getInt();
+
+        // Um nome vazio, "." ou ".." apontaria para a própria pasta de arquivos recebidos ou para a pasta acima dela
+        Path directory = context.getReceiveDirectory();
+        Path target = fileName != null ? directory.resolve(fileName) : null;
+        String refusal = null;
+        if (fileName == null)
+            refusal = "Nome de arquivo inválido.";
+        else if (chunkSize < 1 || chunkSize > MAX_FILE_CHUNK_SIZE)
+            refusal = "Tamanho de bloco inválido: " + chunkSize + " bytes (máximo " + MAX_FILE_CHUNK_SIZE + ").";
+        else if (Files.exists(target))
+            refusal = "Já existe um arquivo recebido com o nome " + fileName + ".";
+        if (refusal != null) {
+            skipFileChunks(channel, false);
+            channel.write(Protocol.ERROR, Protocol.text(refusal));
+            log("Transferência de arquivo recusada: " + refusal);
+            return;
+        }
+
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, "recebendo-", ".parcial");
+        log("Recebendo o arquivo " + fileName + "...");
+
+        ForkJoinPool pool = context.getBulkCipherPool();
+        long received = 0;
+        boolean endReceived = false;
+        boolean authenticated = false;
+        try (FileChannel file = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+            ChunkedCipher chunkedCipher = new ChunkedCipher(cipherSuite, sharedSecret, salt, chunkSize);
+            while (!chunkedCipher.isFinished()) {
+                FrameChannel.Frame frame = channel.readReusingBuffer();
+                if (frame == null)
+                    throw new IOException("O cliente encerrou a conexão durante a transferência do arquivo.");
+                if (frame.getType() != Protocol.FILE_CHUNK && frame.getType() != Protocol.FILE_END)
+                    throw new IOException("Quadro inesperado durante a transferência do arquivo: tipo " + frame.getType());
+
+                endReceived = frame.getType() == Protocol.FILE_END;
+                int encryptedLength = frame.getPayload().remaining();
+                int decryptedLength = pool != null ? chunkedCipher.decryptChunk(frame.getPayload(), endReceived, file, pool)
+                        : chunkedCipher.decryptChunk(frame.getPayload(), endReceived, file);
+                metrics.fileChunkReceived(encryptedLength, decryptedLength);
+                received += decryptedLength;
+            }
+            authenticated = true;
+        } catch (GeneralSecurityException e) {
+            metrics.decryptionFailed();
+            log("Falha ao descriptografar o arquivo: " + e);
+        } finally {
+            if (!authenticated)
+                Files.deleteIfExists(partial);
+        }
+
+        if (authenticated) {
+            boolean published;
+            try {
+                published = publish(partial, target);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            if (!published) {
+                channel.write(Protocol.ERROR, Protocol.text("Já existe um arquivo recebido com o nome " + fileName + "."));
+                log("Arquivo " + fileName + " descartado: outra sessão gravou o mesmo nome antes.");
+                return;
+            }
+            metrics.fileReceived();
+            channel.write(Protocol.RESPONSE, Protocol.response(Protocol.STATUS_SUCCESS, "Arquivo recebido com sucesso! (" + received + " bytes)"));
+            log("Arquivo " + fileName + " gravado em " + target + " (" + received + " bytes).");
+        } else {
+            skipFileChunks(channel, endReceived);
+            channel.write(Protocol.RESPONSE, Protocol.response(Protocol.STATUS_WRONG_KEY, Protocol.RESPONSE_WRONG_KEY));
+            log("Mensagem de chave diferente enviada ao cliente.");
+        }
+    }
+
+    /*
+        Dá o nome final ao arquivo recebido sem substituir um arquivo existente, e retorna false se o nome já existe. A troca de nome
+        atômica (rename) substitui o destino sem avisar; o link físico falha de forma atômica quando o nome já existe, e o arquivo
+        temporário é apagado em seguida por quem chamou. Sem links físicos no sistema de arquivos, a troca de nome sem substituição
+        verifica o destino antes de trocar o nome, o que deixa só uma pequena janela entre duas sessões com o mesmo nome.
+    */
+    private static boolean publish(Path partial, Path target) throws IOException {
+        try {
+            Files.createLink(target, partial);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            try {
+                Files.move(partial, target);
+                return true;
+            } catch (FileAlreadyExistsException exists) {
+                return false;
+            }
+        }
+    }
+
+    // Nome do arquivo enviado pelo cliente, sem o caminho; retorna null para um nome vazio, ".", ".." ou inválido no sistema de arquivos
+    private static Path fileName(String name) {
+        try {
+            Path fileName = Path.of(name).getFileName();
+            if (fileName == null || fileName.toString().isEmpty() || fileName.toString().equals(".") || fileName.toString().equals(".."))
+                return null;
+            return fileName;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    // Descarta os blocos restantes da transferência até o último, para manter a sessão sincronizada
+    private static void skipFileChunks(FrameChannel channel, boolean endReceived) throws IOException {
+        FrameChannel.Frame frame;
+        while (!endReceived && (frame = channel.readReusingBuffer()) != null)
+            endReceived = frame.getType() != Protocol.FILE_CHUNK;
+    }
+
+    /*
+        Exibe uma mensagem no console identificando o cliente, já que várias conexões são atendidas ao mesmo tempo. As mensagens só são
+        exibidas com o registro detalhado ativado: sob carga, escrever cada etapa de cada sessão no console custa mais do que a própria
+        criptografia. Os totais continuam disponíveis nas métricas do servidor. Nos caminhos executados a cada mensagem, a chamada fica
+        dentro de um if (verbose), para que o texto nem seja montado com o registro desativado.
+    */
+    private void log(String message) {
+        if (verbose)
+            System.out.println("[" + clientAddress + "] " + message);
+    }
+}
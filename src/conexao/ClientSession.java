@@ -0,0 +1,554 @@
+package conexao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+
+import javax.crypto.SecretKey;
+
+import auxiliar.ChunkedCipher;
+import auxiliar.CipherSuite;
+import auxiliar.KeyExchange;
+import auxiliar.KeyExchanges;
+import auxiliar.KeyPairPool;
+import auxiliar.SessionCipher;
+
+/*
+    A classe ClientSession representa uma sessão do cliente com o servidor.
+
+    Antes, o TCPClient abria um socket, fazia a troca de chaves Diffie-Hellman, enviava uma única mensagem e fechava a conexão. Agora a troca
+    de chaves é feita uma única vez por sessão, e o segredo compartilhado é reutilizado para todas as mensagens enviadas pela mesma conexão:
+
+    1- connect(): abre o socket e recebe a solicitação da porta de entrada do servidor.
+    2- handshake(entryPort): envia a porta de entrada, os algoritmos de troca de chaves e as cifras suportados, realiza a troca de chaves
+       com o algoritmo escolhido pelo servidor e deriva a chave da cifra escolhida a partir do segredo compartilhado. Se houver um bilhete
+       de retomada do mesmo servidor (recebido em uma sessão anterior), a sessão é retomada sem uma nova troca de chaves. Se o servidor
+       tiver uma porta de dados, a sessão continua em uma conexão com ela, identificada pela ficha recebida no quadro HANDOFF.
+    3- send(message): criptografa e envia uma mensagem, retornando a resposta do servidor. Pode ser chamado quantas vezes for necessário.
+       sendPipelined(message) / drain(): envia mensagens em sequência sem esperar a resposta de cada uma (pipelining), até o limite da
+       janela de mensagens pendentes, e aguarda as confirmações cumulativas do servidor.
+       Depois de um número de mensagens ou de bytes criptografados com a mesma chave, a sessão troca a chave automaticamente pela próxima
+       chave da catraca (quadro KEY_UPDATE), sem nova troca de chaves e sem interromper as mensagens em trânsito.
+    4- sendFile(file) / sendStream(name, source): envia um arquivo ou fluxo de qualquer tamanho em blocos criptografados.
+    5- close(): envia o quadro de encerramento da sessão e fecha a conexão.
+
+    Todas as informações são trocadas em quadros binários (classes Protocol e FrameChannel).
+*/
+public class ClientSession implements Closeable {
+    // Mensagens enviadas em sequência sem confirmação do servidor, por padrão
+    public static final int DEFAULT_WINDOW_SIZE = 32;
+
+    // Limites padrão de mensagens e de bytes criptografados com a mesma chave, antes da atualização automática da chave
+    public static final long DEFAULT_KEY_UPDATE_MESSAGES = 1L << 16;
+    public static final long DEFAULT_KEY_UPDATE_BYTES = 256L * 1024 * 1024;
+
+    private final String serverAddress;
+    private final int serverPort;
+    private final Map<String, KeyPairPool> keyPairPools;
+
+    // Bilhetes de retomada recebidos de cada servidor (endereço:porta), compartilhados por todas as sessões do processo
+    private static final Map<String, SessionTicket> TICKETS = new ConcurrentHashMap<>();
+
+    private FrameChannel channel;
+    private String keyExchangeName;
+    private CipherSuite cipherSuite;
+    private SecretKey sharedSecret;
+    private boolean resumptionEnabled = true;
+    private boolean resumed;
+
+    // Canal de dados: se a sessão aceita continuar na porta de dados do servidor, e a porta e a ficha recebidas no quadro HANDOFF
+    private boolean dataChannelEnabled = true;
+    private int dataPort;
+    private byte[] handoffToken;
+
+    /*
+        Pool que criptografa em paralelo os blocos dos arquivos e fluxos enviados; sem pool, os blocos são criptografados um por vez. Com um
+        único núcleo o modo paralelo só acrescentaria a troca entre as threads, então o pool comum da JVM só é usado com mais de um núcleo.
+    */
+    private ForkJoinPool bulkCipherPool = Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
+
+    // Cifra das mensagens da sessão e buffer reaproveitado com o quadro de cada mensagem enviada (sequência e mensagem criptografada)
+    private SessionCipher sessionCipher;
+    private ByteBuffer outgoing = ByteBuffer.allocate(512);
+
+    // Catraca de chaves: geração da chave atual, limites da atualização automática e o uso da chave atual desde a última atualização
+    private long keyGeneration;
+    private long keyUpdateMessages = DEFAULT_KEY_UPDATE_MESSAGES;
+    private long keyUpdateBytes = DEFAULT_KEY_UPDATE_BYTES;
+    private long messagesWithCurrentKey;
+    private long bytesWithCurrentKey;
+
+    /*
+        Estado do envio em sequência: próximo número de sequência, último número confirmado pelo servidor, mensagens ainda no buffer de
+        saída, mensagens recusadas pelo servidor e o instante de envio de cada mensagem pendente (indexado pela sequência módulo a janela).
+    */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private long nextSequence;
+    private long acknowledgedSequence = -1;
+    private int unflushedMessages;
+    private long rejectedMessages;
+    private long[] sentAt = new long[DEFAULT_WINDOW_SIZE];
+    private LongConsumer acknowledgementListener;
+
+    // Segredo de retomada da troca de chaves completa, guardado até a chegada do bilhete enviado pelo servidor
+    private byte[] pendingResumptionSecret;
+
+    public ClientSession(String serverAddress, int serverPort) {
+        this(serverAddress, serverPort, null);
+    }
+
+    // Sessão que retira o par de chaves de pools abastecidos em segundo plano, útil quando muitas sessões são abertas em sequência
+    public ClientSession(String serverAddress, int serverPort, Map<String, KeyPairPool> keyPairPools) {
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+        this.keyPairPools = keyPairPools;
+    }
+
+    // Cria o socket do cliente, se conecta ao servidor e retorna a solicitação da porta de entrada enviada pelo servidor
+    public String connect() throws IOException {
+        // O FrameChannel lê e escreve os quadros binários do protocolo através do socket
+        channel = new FrameChannel(new Socket(serverAddress, serverPort));
+
+        // Recebe a solicitação da porta de entrada do servidor
+        return Protocol.text(channel.expect(Protocol.PORT_REQUEST).getPayload());
+    }
+
+    // Define se a sessão tenta usar e guardar bilhetes de retomada (ativado por padrão)
+    public void setResumptionEnabled(boolean resumptionEnabled) {
+        this.resumptionEnabled = resumptionEnabled;
+    }
+
+    // Define se a sessão aceita continuar na porta de dados do servidor (ativado por padrão); desativado, ela fica na conexão de entrada
+    public void setDataChannelEnabled(boolean dataChannelEnabled) {
+        this.dataChannelEnabled = dataChannelEnabled;
+    }
+
+    /*
+        Envia a porta de entrada, realiza a troca de chaves e retorna a mensagem de configuração recebida do servidor.
+        Se houver um bilhete de retomada válido deste servidor, tenta primeiro retomar a sessão; se o servidor não tiver mais o bilhete, a
+        troca de chaves completa é feita na mesma conexão.
+    */
+    public String handshake(int entryPort) throws Exception {
+        SessionTicket ticket = resumptionEnabled ? TICKETS.remove(ticketKey()) : null;
+        if (ticket != null && !ticket.isExpired(System.currentTimeMillis())) {
+            String configMessage = resume(entryPort, ticket);
+            if (configMessage != null)
+                return configMessage;
+        }
+
+        channel.write(Protocol.HELLO, Protocol.hello(entryPort, KeyExchanges.offer(), CipherSuite.offer(), dataChannelEnabled));// Envia a porta, os algoritmos e as cifras suportados para o Servidor
+
+        // Recebe a mensagem de configuração do servidor e, se a sessão aceita o canal de dados, a porta de dados e a ficha de transferência
+        String configMessage = Protocol.text(channel.expect(Protocol.CONFIG).getPayload());
+        receiveHandoff();
+
+        /*
+            ByteBuffer serverKey = channel.expect(Protocol.SERVER_KEY).getPayload(): Lê o algoritmo e a cifra escolhidos pelo servidor e a sua chave pública.
+            KeyExchanges.create(keyExchangeName, keyPairPools): Cria o objeto KeyExchange do algoritmo escolhido, com um par de chaves efêmero.
+            PublicKey publicKey = keyExchange.decodePublicKey(publicKeyBytes): Gera a chave pública do servidor a partir da codificação X.509 recebida.
+        */
+        ByteBuffer serverKey = channel.expect(Protocol.SERVER_KEY).getPayload();
+        keyExchangeName = Protocol.getString(serverKey);
+        cipherSuite = CipherSuite.fromName(Protocol.getString(serverKey));
+        byte[] publicKeyBytes = Protocol.getBytes(serverKey);
+        KeyExchange keyExchange = KeyExchanges.create(keyExchangeName, keyPairPools);
+        PublicKey publicKey = keyExchange.decodePublicKey(publicKeyBytes);
+
+        // Envia a chave pública do cliente, gerada pelo objeto keyExchange, na codificação X.509 sem Base64
+        channel.write(Protocol.CLIENT_KEY, ByteBuffer.wrap(keyExchange.getPublicKey().getEncoded()));
+
+        /*
+            Gera o segredo compartilhado entre o cliente e o servidor usando a chave pública do servidor, e deriva dele a chave da cifra negociada.
+            A chave é reutilizada por toda a sessão.
+        */
+        byte[] rawSecret = keyExchange.generateRawSecret(publicKey);
+        sharedSecret = cipherSuite.deriveKey(rawSecret, keyExchangeName);
+        sessionCipher = new SessionCipher(cipherSuite, sharedSecret);
+
+        // O bilhete de retomada chega no quadro SESSION_TICKET, lido junto com a primeira resposta do servidor
+        if (resumptionEnabled)
+            pendingResumptionSecret = SessionTicket.initialSecret(rawSecret);
+
+        attachDataChannel();
+        return configMessage;
+    }
+
+    /*
+        Tenta retomar a sessão com o bilhete informado, em uma única ida e volta. Retorna a mensagem de configuração, ou null se o servidor
+        recusar o bilhete (quadro RESUME_REJECTED).
+    */
+    private String resume(int entryPort, SessionTicket ticket) throws Exception {
+        byte[] clientNonce = SessionTicket.random(SessionTicket.NONCE_LENGTH);
+        channel.write(Protocol.RESUME, Protocol.resume(entryPort, ticket.getId(), clientNonce, dataChannelEnabled));
+
+        FrameChannel.Frame frame = channel.expect(Protocol.CONFIG, Protocol.RESUME_REJECTED);
+        if (frame.getType() == Protocol.RESUME_REJECTED)
+            return null;
+        String configMessage = Protocol.text(frame.getPayload());
+        receiveHandoff();
+
+        ByteBuffer accepted = channel.expect(Protocol.RESUME_ACCEPTED).getPayload();
+        CipherSuite resumedSuite = CipherSuite.fromName(Protocol.getString(accepted));
+        byte[] serverNonce = Protocol.getBytes(accepted);
+        byte[] nextTicketId = Protocol.getBytes(accepted);
+        int lifetimeSeconds = accepted.getInt();
+        if (resumedSuite != ticket.getCipherSuite())
+            throw new IOException("O servidor retomou a sessão com uma cifra diferente da cifra do bilhete.");
+
+        keyExchangeName = ticket.getKeyExchangeName();
+        cipherSuite = resumedSuite;
+        sharedSecret = ticket.resumedKey(clientNonce, serverNonce);
+        sessionCipher = new SessionCipher(cipherSuite, sharedSecret);
+        storeTicket(nextTicketId, ticket.nextSecret(clientNonce, serverNonce), lifetimeSeconds);
+        resumed = true;
+        attachDataChannel();
+        return configMessage;
+    }
+
+    // Lê o quadro HANDOFF, enviado logo depois do CONFIG quando a sessão aceita o canal de dados (porta 0: a sessão fica nesta conexão)
+    private void receiveHandoff() throws IOException {
+        if (!dataChannelEnabled)
+            return;
+        ByteBuffer handoff = channel.expect(Protocol.HANDOFF).getPayload();
+        dataPort = handoff.getInt();
+        handoffToken = Protocol.getBytes(handoff);
+    }
+
+    /*
+        Transfere a sessão estabelecida para a porta de dados: fecha a conexão de entrada (o servidor não envia mais nada por ela), se conecta
+        à porta de dados e envia a ficha no quadro ATTACH. A resposta não é esperada: as mensagens podem ser enviadas em seguida, e uma ficha
+        recusada chega como ERROR no lugar da primeira resposta.
+    */
+    private void attachDataChannel() throws IOException {
+        if (dataPort == 0)
+            return;
+        FrameChannel entryChannel = channel;
+        channel = new FrameChannel(new Socket(serverAddress, dataPort));
+        entryChannel.close();
+        channel.write(Protocol.ATTACH, ByteBuffer.wrap(handoffToken));
+        handoffToken = null;
+    }
+
+    // Porta em que a sessão continua depois da troca de chaves: a porta de dados do servidor, ou 0 se a sessão ficou na conexão de entrada
+    public int getDataPort() {
+        return dataPort;
+    }
+
+    // Lê o bilhete enviado pelo servidor depois da troca de chaves completa
+    private void receiveTicket(ByteBuffer sessionTicket) {
+        byte[] ticketId = Protocol.getBytes(sessionTicket);
+        int lifetimeSeconds = sessionTicket.getInt();
+        if (pendingResumptionSecret != null)
+            storeTicket(ticketId, pendingResumptionSecret, lifetimeSeconds);
+        pendingResumptionSecret = null;
+    }
+
+    // Guarda o bilhete para a próxima sessão com o mesmo servidor; um bilhete vazio indica que o servidor não guarda sessões
+    private void storeTicket(byte[] ticketId, byte[] resumptionSecret, int lifetimeSeconds) {
+        if (ticketId.length == 0 || lifetimeSeconds <= 0)
+            return;
+        TICKETS.put(ticketKey(), new SessionTicket(ticketId, resumptionSecret, cipherSuite, keyExchangeName,
+                System.currentTimeMillis() + lifetimeSeconds * 1000L));
+    }
+
+    private String ticketKey() {
+        return serverAddress + ":" + serverPort;
+    }
+
+    // Lê a resposta do servidor, guardando o bilhete de retomada que chega antes da primeira resposta da sessão
+    private ByteBuffer readResponse() throws IOException {
+        FrameChannel.Frame frame;
+        while ((frame = channel.expect(Protocol.RESPONSE, Protocol.SESSION_TICKET)).getType() == Protocol.SESSION_TICKET)
+            receiveTicket(frame.getPayload());
+        return frame.getPayload();
+    }
+
+    // Nome do algoritmo de troca de chaves escolhido pelo servidor (na sessão retomada, o da sessão original)
+    public String getKeyExchangeName() {
+        return keyExchangeName;
+    }
+
+    // Indica se a sessão foi retomada a partir de um bilhete, sem uma nova troca de chaves
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    // Cifra escolhida pelo servidor
+    public CipherSuite getCipherSuite() {
+        return cipherSuite;
+    }
+
+    // Criptografa a mensagem (codificada em UTF-8) com o segredo da sessão
+    public byte[] encrypt(String message) throws Exception {
+        ByteBuffer encrypted = encryptToOutgoing(message, 0);
+        return Protocol.remaining(encrypted);
+    }
+
+    /*
+        Criptografa a mensagem no buffer reaproveitado de saída, depois de reservar os primeiros bytes (o número de sequência, por exemplo),
+        e retorna o buffer pronto para leitura a partir do início. Assim o envio de cada mensagem não cria arrays. Quando a chave atual
+        atinge um dos limites de uso, ela é atualizada antes da criptografia.
+    */
+    private ByteBuffer encryptToOutgoing(String message, int reserved) throws Exception {
+        if ((keyUpdateMessages > 0 && messagesWithCurrentKey >= keyUpdateMessages) || (keyUpdateBytes > 0 && bytesWithCurrentKey >= keyUpdateBytes))
+            appendKeyUpdate();
+
+        int capacity = reserved + sessionCipher.encryptedLength(message.length() * 3);// Até 3 bytes por caractere em UTF-8
+        if (outgoing.capacity() < capacity)
+            outgoing = ByteBuffer.allocate(Math.max(capacity, outgoing.capacity() * 2));
+        outgoing.clear().position(reserved);
+        bytesWithCurrentKey += sessionCipher.encrypt(message, outgoing);
+        messagesWithCurrentKey++;
+        return outgoing.flip();
+    }
+
+    /*
+        Define depois de quantas mensagens ou de quantos bytes criptografados a chave da sessão é atualizada automaticamente (o que ocorrer
+        primeiro); 0 desativa o limite correspondente. Só contam as mensagens criptografadas pela própria sessão.
+    */
+    public void setKeyUpdateLimits(long messages, long bytes) {
+        if (messages < 0 || bytes < 0)
+            throw new IllegalArgumentException("Os limites de atualização da chave não podem ser negativos.");
+        this.keyUpdateMessages = messages;
+        this.keyUpdateBytes = bytes;
+    }
+
+    // Geração da chave atual da sessão: 0 é a chave da troca de chaves, e cada atualização avança uma geração
+    public long getKeyGeneration() {
+        return keyGeneration;
+    }
+
+    // Atualiza a chave da sessão imediatamente, enviando o quadro KEY_UPDATE ao servidor
+    public void updateKey() throws Exception {
+        appendKeyUpdate();
+        channel.flush();
+    }
+
+    /*
+        Acrescenta o quadro KEY_UPDATE ao buffer de saída e passa a usar a chave da próxima geração da catraca (CipherSuite.nextKey). O
+        quadro segue junto com a próxima mensagem, e o servidor, que lê os quadros na ordem, troca a chave exatamente no mesmo ponto.
+        Custa alguns HMACs e a reinicialização dos objetos Cipher, sem ida e volta pela rede.
+    */
+    private void appendKeyUpdate() throws Exception {
+        long generation = keyGeneration + 1;
+        channel.append(Protocol.KEY_UPDATE, Protocol.keyUpdate(generation));
+        sharedSecret = cipherSuite.nextKey(sharedSecret, generation);
+        sessionCipher.updateKey(sharedSecret);
+        keyGeneration = generation;
+        messagesWithCurrentKey = 0;
+        bytesWithCurrentKey = 0;
+    }
+
+    // Envia uma mensagem já criptografada ao servidor e retorna a resposta do servidor
+    public String sendEncrypted(byte[] encryptedMessage) throws IOException {
+        drain();
+        channel.write(Protocol.MESSAGE, ByteBuffer.wrap(encryptedMessage));
+        return readTextResponse();
+    }
+
+    // Lê a resposta do servidor e retorna o seu texto
+    private String readTextResponse() throws IOException {
+        ByteBuffer response = readResponse();
+        response.get();// Situação da resposta
+        return Protocol.getString(response);
+    }
+
+    // Criptografa e envia uma mensagem ao servidor, retornando a resposta do servidor
+    public String send(String message) throws Exception {
+        drain();
+        channel.write(Protocol.MESSAGE, encryptToOutgoing(message, 0));
+        return readTextResponse();
+    }
+
+    /*
+        Define a janela do envio em sequência: quantas mensagens podem estar enviadas sem confirmação do servidor (de 1 a
+        Protocol.MAX_WINDOW_SIZE). Só pode ser alterada sem mensagens pendentes.
+    */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1 || windowSize > Protocol.MAX_WINDOW_SIZE)
+            throw new IllegalArgumentException("A janela deve estar entre 1 e " + Protocol.MAX_WINDOW_SIZE + " mensagens.");
+        if (getPendingMessages() > 0)
+            throw new IllegalStateException("A janela não pode ser alterada com mensagens pendentes.");
+        this.windowSize = windowSize;
+        this.sentAt = new long[windowSize];
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    // Recebe o tempo de ida e volta (em nanossegundos) de cada mensagem em sequência, desde o envio até a confirmação do servidor
+    public void setAcknowledgementListener(LongConsumer acknowledgementListener) {
+        this.acknowledgementListener = acknowledgementListener;
+    }
+
+    // Mensagens enviadas em sequência ainda sem confirmação do servidor
+    public int getPendingMessages() {
+        return (int) (nextSequence - 1 - acknowledgedSequence);
+    }
+
+    // Mensagens em sequência recusadas pelo servidor desde o início da sessão (chave diferente ou falha na descriptografia)
+    public long getRejectedMessages() {
+        return rejectedMessages;
+    }
+
+    // Criptografa e envia uma mensagem em sequência, sem esperar a resposta do servidor, e retorna o seu número de sequência
+    public long sendPipelined(String message) throws Exception {
+        awaitWindow();
+        ByteBuffer frame = encryptToOutgoing(message, 8);
+        long sequence = nextSequence;
+        frame.putLong(0, sequence);
+        appendPipelined(frame);
+        return sequence;
+    }
+
+    /*
+        Envia uma mensagem já criptografada em sequência e retorna o seu número de sequência.
+
+        A mensagem é acrescentada ao buffer de saída do FrameChannel, que só é enviado ao socket quando metade da janela está acumulada (ou
+        quando o buffer enche), então várias mensagens seguem em uma única escrita. As confirmações que já chegaram são lidas sem bloquear;
+        o envio só aguarda uma confirmação quando a janela está cheia, e enquanto isso a outra metade da janela continua em trânsito.
+    */
+    public long sendPipelinedEncrypted(byte[] encryptedMessage) throws IOException {
+        awaitWindow();
+        long sequence = nextSequence;
+        appendPipelined(Protocol.sequencedMessage(sequence, encryptedMessage));
+        return sequence;
+    }
+
+    // Lê as confirmações que já chegaram e, com a janela cheia, envia as mensagens acumuladas e aguarda uma confirmação
+    private void awaitWindow() throws IOException {
+        while (getPendingMessages() > 0 && channel.hasBufferedInput())
+            readAcknowledgementFrame();
+        if (getPendingMessages() >= windowSize) {
+            flushPipelined();
+            while (getPendingMessages() >= windowSize)
+                readAcknowledgement();
+        }
+    }
+
+    // Acrescenta o quadro da próxima mensagem ao buffer de saída, enviando-o a cada meia janela
+    private void appendPipelined(ByteBuffer sequencedMessage) throws IOException {
+        sentAt[(int) (nextSequence++ % windowSize)] = System.nanoTime();
+        channel.append(Protocol.SEQUENCED_MESSAGE, sequencedMessage);
+        if (++unflushedMessages >= Math.max(1, windowSize / 2))
+            flushPipelined();
+    }
+
+    // Envia as mensagens em sequência acumuladas e aguarda todas as confirmações; retorna o total de mensagens recusadas na sessão
+    public long drain() throws IOException {
+        if (getPendingMessages() == 0)
+            return rejectedMessages;
+        flushPipelined();
+        while (getPendingMessages() > 0)
+            readAcknowledgement();
+        return rejectedMessages;
+    }
+
+    private void flushPipelined() throws IOException {
+        channel.flush();
+        unflushedMessages = 0;
+    }
+
+    // Aguarda uma confirmação cumulativa do servidor
+    private void readAcknowledgement() throws IOException {
+        boolean acknowledged;
+        do {
+            acknowledged = readAcknowledgementFrame();// Um bilhete de retomada pode chegar antes da confirmação
+        } while (!acknowledged);
+    }
+
+    /*
+        Lê um quadro ACK ou SESSION_TICKET (o bilhete chega antes da primeira confirmação da sessão) e retorna se era uma confirmação. A
+        confirmação libera na janela todas as mensagens até a sequência confirmada.
+    */
+    private boolean readAcknowledgementFrame() throws IOException {
+        FrameChannel.Frame frame = channel.expect(Protocol.ACK, Protocol.SESSION_TICKET);
+        if (frame.getType() == Protocol.SESSION_TICKET) {
+            receiveTicket(frame.getPayload());
+            return false;
+        }
+
+        ByteBuffer ack = frame.getPayload();
+        long sequence = ack.getLong();
+        int rejected = ack.getInt();
+        if (sequence <= acknowledgedSequence || sequence >= nextSequence)
+            throw new IOException("Confirmação com número de sequência inválido: " + sequence);
+
+        long now = System.nanoTime();
+        if (acknowledgementListener != null) {
+            for (long s = acknowledgedSequence + 1; s <= sequence; s++)
+                acknowledgementListener.accept(now - sentAt[(int) (s % windowSize)]);
+        }
+        acknowledgedSequence = sequence;
+        rejectedMessages += rejected;
+        return true;
+    }
+
+    // Define o pool que criptografa os blocos dos arquivos em paralelo (o pool comum da JVM, por padrão); null criptografa um bloco por vez
+    public void setBulkCipherPool(ForkJoinPool bulkCipherPool) {
+        this.bulkCipherPool = bulkCipherPool;
+    }
+
+    // Envia um arquivo em blocos criptografados, sem carregá-lo inteiro na memória, e retorna a resposta do servidor
+    public String sendFile(Path file) throws Exception {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            return sendStream(file.getFileName().toString(), source);
+        }
+    }
+
+    /*
+        Envia um fluxo de dados de qualquer tamanho em blocos criptografados (classe ChunkedCipher) e retorna a resposta do servidor.
+        Cada bloco é enviado em um quadro FILE_CHUNK, e o último em um quadro FILE_END. Com o pool de criptografia em blocos, vários blocos
+        são criptografados ao mesmo tempo nas threads do pool enquanto os anteriores são enviados, na ordem; sem o pool, cada bloco é lido,
+        criptografado e enviado antes do próximo ser lido.
+    */
+    public String sendStream(String name, ReadableByteChannel source) throws Exception {
+        drain();
+        ChunkedCipher chunkedCipher = new ChunkedCipher(cipherSuite, sharedSecret, ChunkedCipher.newSalt(), ChunkedCipher.DEFAULT_CHUNK_SIZE);
+        channel.write(Protocol.FILE_START, Protocol.fileStart(name, chunkedCipher.getSalt(), chunkedCipher.getChunkSize()));
+
+        ChunkedCipher.ChunkSink sink = (encryptedChunk, last) -> channel.write(last ? Protocol.FILE_END : Protocol.FILE_CHUNK, encryptedChunk);
+        if (bulkCipherPool != null)
+            chunkedCipher.encrypt(source, sink, bulkCipherPool);
+        else
+            chunkedCipher.encrypt(source, sink);
+
+        ByteBuffer response = readResponse();
+        response.get();// Situação da resposta
+        return Protocol.getString(response);
+    }
+
+    public boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    // Envia o quadro de encerramento da sessão, aguarda a confirmação do servidor e fecha a conexão
+    @Override
+    public void close() throws IOException {
+        if (!isOpen())
+            return;
+
+        try {
+            if (sharedSecret != null) {
+                drain();
+                channel.write(Protocol.CLOSE);
+                FrameChannel.Frame frame;
+                while ((frame = channel.read()) != null && frame.getType() == Protocol.SESSION_TICKET)
+                    receiveTicket(frame.getPayload());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
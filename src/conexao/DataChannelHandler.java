@@ -0,0 +1,82 @@
+package conexao;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/*
+    A classe DataChannelHandler atende uma conexão aceita pela porta de dados do servidor (classe SessionHandoff).
+
+    O primeiro quadro da conexão deve ser o ATTACH, com a ficha que o cliente recebeu no quadro HANDOFF da conexão de entrada. A sessão
+    estabelecida com essa ficha é retirada do SessionHandoff (esperando, se preciso, o servidor terminar a troca de chaves) e continua
+    nesta conexão e nesta thread (ClientHandler.continueOn). Uma ficha desconhecida, já usada ou vencida é respondida com ERROR e a
+    conexão é fechada.
+
+    Com o controle de admissão, a espera pelo ATTACH tem o mesmo prazo da troca de chaves; sem ele, o prazo da ficha.
+*/
+public class DataChannelHandler implements Runnable {
+    private final Socket dataSocket;
+    private final ServerContext context;
+
+    public DataChannelHandler(Socket dataSocket, ServerContext context) {
+        this.dataSocket = dataSocket;
+        this.context = context;
+    }
+
+    @Override
+    public void run() {
+        ServerMetrics metrics = context.getMetrics();
+        AdmissionControl admissionControl = context.getAdmissionControl();
+        AdmissionControl.Deadline deadline = null;
+        ClientHandler session = null;
+        try {
+            SessionHandoff sessionHandoff = context.getSessionHandoff();
+            if (admissionControl != null)
+                deadline = admissionControl.startHandshake(dataSocket);
+            else if (sessionHandoff != null)
+                dataSocket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, sessionHandoff.getTimeoutMillis()));
+
+            // Até a ficha ser apresentada, a conexão não pertence a nenhuma sessão e só são aceitos quadros pequenos
+            FrameChannel channel = new FrameChannel(dataSocket);
+            channel.setMaxPayloadLength(Protocol.MAX_HANDSHAKE_PAYLOAD_LENGTH);
+            byte[] token = Protocol.remaining(channel.expect(Protocol.ATTACH).getPayload());
+
+            // Daqui em diante as leituras são as da sessão; a espera pela troca de chaves é limitada pelo prazo da ficha
+            if (admissionControl != null)
+                admissionControl.startSession(deadline, dataSocket);
+            else
+                dataSocket.setSoTimeout(0);
+
+            session = sessionHandoff != null ? sessionHandoff.take(token) : null;
+            if (session == null) {
+                metrics.handoffRejected();
+                channel.write(Protocol.ERROR, Protocol.text("Ficha de transferência desconhecida ou vencida."));
+                return;
+            }
+            metrics.handoffAttached();
+            session.continueOn(dataSocket, channel);
+        } catch (InterruptedException e) {
+            // O servidor está sendo encerrado
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (e instanceof SocketTimeoutException || (deadline != null && deadline.hasExpired())) {
+                metrics.handshakeTimedOut();
+            } else {
+                metrics.communicationError();
+                System.out.println("[" + dataSocket.getInetAddress().getHostAddress() + ":" + dataSocket.getPort() + "] Erro na conexão de dados: "
+                        + e.getMessage());
+            }
+        } finally {
+            if (deadline != null)
+                deadline.cancel();
+            // Com a sessão transferida, a conexão é fechada pelo ClientHandler no fim da sessão
+            if (session == null) {
+                try {
+                    dataSocket.close();
+                } catch (IOException e) {
+                    // A conexão já estava fechada
+                }
+            }
+        }
+    }
+}
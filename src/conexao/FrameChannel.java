@@ -0,0 +1,222 @@
+package conexao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+    A classe FrameChannel lê e escreve os quadros binários do protocolo (classe Protocol) em um socket.
+
+    Ela substitui o par BufferedReader/PrintWriter usado antes: em vez de linhas de texto, cada quadro é escrito com um cabeçalho de
+    versão, tipo e tamanho seguido do conteúdo, e lido de volta exatamente com o tamanho informado.
+
+    Os quadros escritos com append() ficam no buffer de saída até o próximo flush(), então vários quadros pequenos (as mensagens enviadas
+    em sequência, por exemplo) são enviados ao socket em uma única chamada de sistema.
+*/
+public class FrameChannel implements Closeable {
+    // Tamanho do buffer de saída: comporta centenas de mensagens pequenas acumuladas com append()
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Maior conteúdo lido no buffer reaproveitado de readReusingBuffer(); quadros maiores usam um array próprio, para não reter a memória
+    private static final int MAX_REUSED_PAYLOAD_LENGTH = 1024 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final ByteBuffer header = ByteBuffer.allocate(Protocol.HEADER_LENGTH);
+    private byte[] reusedPayload = new byte[0];
+    private int maxPayloadLength = Protocol.MAX_PAYLOAD_LENGTH;
+
+    public FrameChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        /*
+            Cada quadro já é escrito de uma só vez (write + flush), então o algoritmo de Nagle só atrasa os quadros pequenos enviados em
+            sequência (CONFIG seguido de SERVER_KEY, por exemplo), que esperavam a confirmação atrasada do outro lado (cerca de 40 ms).
+        */
+        socket.setTcpNoDelay(true);
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+    }
+
+    /*
+        Quadro lido do socket: o tipo e o conteúdo, pronto para ser lido com os métodos de ByteBuffer (getInt, get, ...) e os métodos
+        auxiliares de Protocol.
+    */
+    public static final class Frame {
+        private final byte type;
+        private final ByteBuffer payload;
+
+        Frame(byte type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+
+    /*
+        Define o maior conteúdo aceito nos quadros lidos (no máximo Protocol.MAX_PAYLOAD_LENGTH). O servidor usa um limite pequeno até a
+        sessão ser estabelecida, para que um quadro anunciado com um tamanho grande seja rejeitado antes de qualquer alocação.
+    */
+    public void setMaxPayloadLength(int maxPayloadLength) {
+        if (maxPayloadLength < 0 || maxPayloadLength > Protocol.MAX_PAYLOAD_LENGTH)
+            throw new IllegalArgumentException("Limite de conteúdo inválido: " + maxPayloadLength);
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    // Escreve um quadro sem conteúdo
+    public void write(byte type) throws IOException {
+        write(type, ByteBuffer.allocate(0));
+    }
+
+    // Escreve um quadro com o conteúdo restante do buffer e envia imediatamente
+    public synchronized void write(byte type, ByteBuffer payload) throws IOException {
+        writeHeader(type, payload.remaining());
+        writePayload(payload);
+        output.flush();
+    }
+
+    // Acrescenta um quadro ao buffer de saída sem enviá-lo; o buffer é enviado no próximo flush() (ou quando fica cheio)
+    public synchronized void append(byte type, ByteBuffer payload) throws IOException {
+        writeHeader(type, payload.remaining());
+        writePayload(payload);
+    }
+
+    // Envia os quadros acumulados no buffer de saída
+    public synchronized void flush() throws IOException {
+        output.flush();
+    }
+
+    private void writeHeader(byte type, int length) throws IOException {
+        header.clear();
+        header.put(Protocol.VERSION).put(type).putInt(length);
+        output.write(header.array(), 0, Protocol.HEADER_LENGTH);
+    }
+
+    private void writePayload(ByteBuffer payload) throws IOException {
+        if (payload.hasArray()) {
+            output.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            payload.position(payload.limit());
+        } else {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            output.write(bytes);
+        }
+    }
+
+    /*
+        Lê o próximo quadro. Retorna null quando o outro lado fecha a conexão entre dois quadros. Quadros com uma versão desconhecida ou com
+        um tamanho acima do limite são rejeitados com uma IOException.
+    */
+    public Frame read() throws IOException {
+        return read(false);
+    }
+
+    /*
+        Lê o próximo quadro em um buffer reaproveitado entre as leituras, sem criar um array por quadro. O conteúdo do quadro só vale até a
+        próxima leitura, então deve ser usado (ou copiado) antes dela. Usado no loop das sessões, onde cada mensagem é descriptografada
+        assim que chega.
+    */
+    public Frame readReusingBuffer() throws IOException {
+        return read(true);
+    }
+
+    private Frame read(boolean reuseBuffer) throws IOException {
+        header.clear();
+        try {
+            input.readFully(header.array(), 0, Protocol.HEADER_LENGTH);
+        } catch (EOFException | SocketException e) {
+            return null;
+        }
+
+        byte version = header.get();
+        byte type = header.get();
+        int length = header.getInt();
+        if (version != Protocol.VERSION)
+            throw new IOException("Versão do protocolo não suportada: " + version);
+        if (length < 0 || length > maxPayloadLength)
+            throw new IOException("Tamanho de quadro inválido: " + length);
+
+        byte[] payload;
+        if (!reuseBuffer || length > MAX_REUSED_PAYLOAD_LENGTH) {
+            payload = new byte[length];
+        } else {
+            if (reusedPayload.length < length)
+                reusedPayload = new byte[Math.max(length, Math.min(2 * reusedPayload.length, MAX_REUSED_PAYLOAD_LENGTH))];
+            payload = reusedPayload;
+        }
+        input.readFully(payload, 0, length);
+        return new Frame(type, ByteBuffer.wrap(payload, 0, length));
+    }
+
+    // Lê o próximo quadro e verifica se ele é de um dos tipos esperados
+    public Frame expect(byte... types) throws IOException {
+        Frame frame = read();
+        if (frame == null)
+            throw new EOFException("A conexão foi encerrada durante a troca de quadros.");
+        if (frame.getType() == Protocol.ERROR)
+            throw new IOException("Erro enviado pelo outro lado: " + Protocol.text(frame.getPayload()));
+        if (frame.getType() == Protocol.BUSY) {
+            ByteBuffer busy = frame.getPayload();
+            long retryAfterMillis = Integer.toUnsignedLong(busy.getInt());
+            throw new ServerBusyException(Protocol.getString(busy), retryAfterMillis);
+        }
+        for (byte type : types) {
+            if (frame.getType() == type)
+                return frame;
+        }
+        throw new IOException("Quadro inesperado: tipo " + frame.getType() + ", esperado " + Arrays.toString(types));
+    }
+
+    /*
+        Escreve um único quadro direto no socket e fecha a conexão, sem criar um FrameChannel (e os seus buffers). Usado para recusar
+        conexões na thread aceitadora do servidor, que não pode ficar bloqueada: o quadro é pequeno e cabe no buffer de envio do socket
+        recém-aberto.
+    */
+    public static void writeAndClose(Socket socket, byte type, ByteBuffer payload) {
+        try (socket) {
+            ByteBuffer frame = ByteBuffer.allocate(Protocol.HEADER_LENGTH + payload.remaining());
+            frame.put(Protocol.VERSION).put(type).putInt(payload.remaining()).put(payload);
+            socket.getOutputStream().write(frame.array());
+        } catch (IOException e) {
+            // O cliente já fechou a conexão; não há a quem avisar
+        }
+    }
+
+    // Indica se já há dados recebidos para ler, ou seja, se o próximo read() provavelmente não vai bloquear
+    public boolean hasBufferedInput() throws IOException {
+        return input.available() > 0;
+    }
+
+    // Encerra a leitura do socket: a leitura em andamento, e as próximas, terminam como se o outro lado tivesse fechado a conexão
+    public void shutdownInput() {
+        try {
+            socket.shutdownInput();
+        } catch (IOException e) {
+            // A conexão já estava fechada
+        }
+    }
+
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,334 @@
+package conexao;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import auxiliar.LatencyHistogram;
+
+/*
+    A classe LoadGenerator gera carga no servidor sem interação do usuário, para medir a capacidade do servidor.
+
+    1- Abre o número configurado de conexões simultâneas, cada uma em uma thread.
+    2- Em cada conexão, repete sessões completas até o fim da duração configurada: conexão e troca de chaves (ou retomada de sessão),
+       envio do número configurado de mensagens do tamanho configurado, e encerramento da sessão.
+    3- Mede o tempo da conexão com a troca de chaves e o tempo de ida e volta de cada mensagem (da criptografia até a resposta do servidor)
+       em histogramas (classe LatencyHistogram), um por thread, somados no final. Com uma janela maior que 1, as mensagens são enviadas em
+       sequência (pipelining) e o tempo de cada uma vai do envio até a confirmação cumulativa do servidor.
+    4- Exibe a vazão (sessões, mensagens e bytes por segundo) e os percentis p50, p99 e p99.9 de cada tempo.
+    5- As conexões recusadas pelo servidor sobrecarregado (quadro BUSY) são contadas à parte, e a conexão espera o tempo sugerido pelo
+       servidor antes da próxima tentativa, como um cliente bem comportado.
+    6- Depois de outra falha (conexão recusada ou interrompida, erro na troca de chaves), a conexão espera antes de tentar de novo, com
+       espera dobrada a cada falha seguida, e desiste depois de MAX_CONSECUTIVE_ERRORS falhas seguidas, para não repetir o mesmo erro
+       sem parar nem inflar a contagem de erros.
+
+    A porta de entrada, que no modo interativo é digitada pelo usuário no meio do protocolo, é a própria porta do servidor. As sessões
+    aceitam continuar na porta de dados do servidor, quando ele tem uma, e o tempo da conexão inclui a conexão com a porta de dados.
+*/
+public class LoadGenerator {
+    public static final int DEFAULT_CONNECTIONS = 8;
+    public static final int DEFAULT_MESSAGES_PER_SESSION = 10;
+    public static final int DEFAULT_PAYLOAD_SIZE = 128;
+    public static final int DEFAULT_DURATION_SECONDS = 10;
+    public static final int DEFAULT_WINDOW_SIZE = 1;
+
+    // Falhas seguidas de uma conexão antes de ela desistir, e limites da espera entre as tentativas
+    public static final int MAX_CONSECUTIVE_ERRORS = 10;
+    private static final long MIN_RETRY_MILLIS = 10;
+    private static final long MAX_RETRY_MILLIS = 1000;
+
+    private final String serverAddress;
+    private final int serverPort;
+    private int connections = DEFAULT_CONNECTIONS;
+    private int messagesPerSession = DEFAULT_MESSAGES_PER_SESSION;
+    private int payloadSize = DEFAULT_PAYLOAD_SIZE;
+    private long durationMillis = TimeUnit.SECONDS.toMillis(DEFAULT_DURATION_SECONDS);
+    private boolean resumptionEnabled = true;
+    private boolean dataChannelEnabled = true;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private long keyUpdateMessages = ClientSession.DEFAULT_KEY_UPDATE_MESSAGES;
+
+    public LoadGenerator(String serverAddress, int serverPort) {
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+    }
+
+    /*
+        Cria o gerador a partir dos argumentos da linha de comando, no formato:
+            <endereço> <porta> [--conexoes=N] [--mensagens=N] [--tamanho=bytes] [--duracao=segundos] [--janela=N]
+            [--atualizar-chave=N] [--sem-retomada] [--sem-canal-dados]
+    */
+    public static LoadGenerator fromArgs(String[] args) {
+        if (args.length < 2)
+            throw new IllegalArgumentException("Informe o endereço e a porta do servidor.");
+
+        LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : null;
+            String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            switch (name) {
+                case "--conexoes":
+                    generator.setConnections(Integer.parseInt(value));
+                    break;
+                case "--mensagens":
+                    generator.setMessagesPerSession(Integer.parseInt(value));
+                    break;
+                case "--tamanho":
+                    generator.setPayloadSize(Integer.parseInt(value));
+                    break;
+                case "--duracao":
+                    generator.setDurationMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+                    break;
+                case "--janela":
+                    generator.setWindowSize(Integer.parseInt(value));
+                    break;
+                case "--atualizar-chave":
+                    generator.setKeyUpdateMessages(Long.parseLong(value));
+                    break;
+                case "--sem-retomada":
+                    generator.setResumptionEnabled(false);
+                    break;
+                case "--sem-canal-dados":
+                    generator.setDataChannelEnabled(false);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+            }
+        }
+        return generator;
+    }
+
+    public void setConnections(int connections) {
+        if (connections < 1)
+            throw new IllegalArgumentException("O número de conexões deve ser maior que zero.");
+        this.connections = connections;
+    }
+
+    public void setMessagesPerSession(int messagesPerSession) {
+        if (messagesPerSession < 0)
+            throw new IllegalArgumentException("O número de mensagens por sessão não pode ser negativo.");
+        this.messagesPerSession = messagesPerSession;
+    }
+
+    public void setPayloadSize(int payloadSize) {
+        if (payloadSize < 0)
+            throw new IllegalArgumentException("O tamanho da mensagem não pode ser negativo.");
+        this.payloadSize = payloadSize;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        if (durationMillis < 1)
+            throw new IllegalArgumentException("A duração deve ser maior que zero.");
+        this.durationMillis = durationMillis;
+    }
+
+    // Com uma janela de 1 mensagem, cada mensagem espera a sua resposta; acima disso, as mensagens são enviadas em sequência
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1 || windowSize > Protocol.MAX_WINDOW_SIZE)
+            throw new IllegalArgumentException("A janela deve estar entre 1 e " + Protocol.MAX_WINDOW_SIZE + " mensagens.");
+        this.windowSize = windowSize;
+    }
+
+    // Mensagens criptografadas com a mesma chave antes da atualização da chave da sessão (0 desativa a atualização por mensagens)
+    public void setKeyUpdateMessages(long keyUpdateMessages) {
+        if (keyUpdateMessages < 0)
+            throw new IllegalArgumentException("O intervalo de atualização da chave não pode ser negativo.");
+        this.keyUpdateMessages = keyUpdateMessages;
+    }
+
+    public void setResumptionEnabled(boolean resumptionEnabled) {
+        this.resumptionEnabled = resumptionEnabled;
+    }
+
+    // Define se as sessões aceitam continuar na porta de dados do servidor; desativado, cada sessão fica na conexão de entrada
+    public void setDataChannelEnabled(boolean dataChannelEnabled) {
+        this.dataChannelEnabled = dataChannelEnabled;
+    }
+
+    // Resultado de uma execução, somado de todas as conexões
+    public static final class Report {
+        private final LatencyHistogram handshakes = new LatencyHistogram();
+        private final LatencyHistogram messages = new LatencyHistogram();
+        private long sessions;
+        private long resumedSessions;
+        private long errors;
+        private long busyRejections;
+        private long bytesSent;
+        private long elapsedNanos;
+        private String firstError;
+
+        private void merge(Report other) {
+            handshakes.merge(other.handshakes);
+            messages.merge(other.messages);
+            sessions += other.sessions;
+            resumedSessions += other.resumedSessions;
+            errors += other.errors;
+            busyRejections += other.busyRejections;
+            bytesSent += other.bytesSent;
+            if (firstError == null)
+                firstError = other.firstError;
+        }
+
+        public LatencyHistogram getHandshakes() {
+            return handshakes;
+        }
+
+        public LatencyHistogram getMessages() {
+            return messages;
+        }
+
+        public long getSessions() {
+            return sessions;
+        }
+
+        public long getResumedSessions() {
+            return resumedSessions;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        // Conexões recusadas pelo servidor com o quadro BUSY
+        public long getBusyRejections() {
+            return busyRejections;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public double getElapsedSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = getElapsedSeconds();
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("Duração: %.1f s%n", seconds));
+            report.append(String.format("Sessões: %d (%d retomadas), %.1f sessões/s%n", sessions, resumedSessions, sessions / seconds));
+            report.append(String.format("Mensagens: %d, %.1f mensagens/s, %.2f MB/s%n", messages.getCount(), messages.getCount() / seconds,
+                    bytesSent / seconds / (1024 * 1024)));
+            report.append(String.format("Erros: %d%s%n", errors, firstError != null ? " (primeiro: " + firstError + ")" : ""));
+            report.append(String.format("Recusadas pelo servidor ocupado: %d%n", busyRejections));
+            report.append("Conexão e troca de chaves: ").append(handshakes).append(System.lineSeparator());
+            report.append("Ida e volta das mensagens: ").append(messages);
+            return report.toString();
+        }
+    }
+
+    // Executa a carga durante a duração configurada e retorna o resultado
+    public Report run() throws InterruptedException {
+        String message = randomMessage(payloadSize);
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+        List<Future<Report>> results = new ArrayList<>();
+        for (int i = 0; i < connections; i++)
+            results.add(executor.submit(() -> runConnection(message, deadline)));
+        executor.shutdown();
+
+        Report total = new Report();
+        for (Future<Report> result : results) {
+            try {
+                total.merge(result.get());
+            } catch (ExecutionException e) {
+                total.errors++;
+            }
+        }
+        total.elapsedNanos = System.nanoTime() - start;
+        return total;
+    }
+
+    // Repete sessões completas em uma conexão até o prazo final
+    private Report runConnection(String message, long deadline) {
+        Report report = new Report();
+        long messageBytes = message.getBytes(StandardCharsets.UTF_8).length;
+        int consecutiveErrors = 0;
+
+        while (System.nanoTime() < deadline) {
+            try (ClientSession session = new ClientSession(serverAddress, serverPort)) {
+                session.setResumptionEnabled(resumptionEnabled);
+                session.setDataChannelEnabled(dataChannelEnabled);
+                session.setKeyUpdateLimits(keyUpdateMessages, ClientSession.DEFAULT_KEY_UPDATE_BYTES);
+
+                long handshakeStart = System.nanoTime();
+                session.connect();
+                session.handshake(serverPort);
+                report.handshakes.record(System.nanoTime() - handshakeStart);
+                report.sessions++;
+                if (session.isResumed())
+                    report.resumedSessions++;
+
+                if (windowSize > 1) {
+                    // As mensagens seguem sem esperar resposta; o tempo de cada uma é registrado quando a sua confirmação chega
+                    session.setWindowSize(windowSize);
+                    session.setAcknowledgementListener(report.messages::record);
+                    for (int i = 0; i < messagesPerSession; i++) {
+                        session.sendPipelined(message);
+                        report.bytesSent += messageBytes;
+                    }
+                    long rejected = session.drain();
+                    if (rejected > 0) {
+                        report.errors += rejected;
+                        if (report.firstError == null)
+                            report.firstError = rejected + " mensagens recusadas pelo servidor";
+                    }
+                } else {
+                    for (int i = 0; i < messagesPerSession; i++) {
+                        long messageStart = System.nanoTime();
+                        session.send(message);
+                        report.messages.record(System.nanoTime() - messageStart);
+                        report.bytesSent += messageBytes;
+                    }
+                }
+                consecutiveErrors = 0;
+            } catch (ServerBusyException e) {
+                report.busyRejections++;
+                long waitMillis = Math.min(e.getRetryAfterMillis(), TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                try {
+                    if (waitMillis > 0)
+                        Thread.sleep(waitMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } catch (Exception e) {
+                report.errors++;
+                if (report.firstError == null)
+                    report.firstError = e.toString();
+                if (++consecutiveErrors >= MAX_CONSECUTIVE_ERRORS)
+                    break;
+
+                long retryMillis = Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << (consecutiveErrors - 1));
+                long waitMillis = Math.min(retryMillis, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                try {
+                    if (waitMillis > 0)
+                        Thread.sleep(waitMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return report;
+    }
+
+    // Mensagem de texto com o tamanho informado em bytes
+    private static String randomMessage(int size) {
+        Random random = new Random();
+        char[] characters = new char[size];
+        for (int i = 0; i < size; i++)
+            characters[i] = (char) ('a' + random.nextInt(26));
+        return new String(characters);
+    }
+}
@@ -0,0 +1,74 @@
+package conexao;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+    A classe MetricsEndpoint publica as métricas do servidor (classe ServerMetrics) em um endpoint HTTP local, no formato de texto do
+    Prometheus:
+
+        curl http://127.0.0.1:<porta>/metrics
+
+    O endpoint escuta apenas no endereço de loopback, então as métricas só podem ser lidas da própria máquina (ou por um coletor local).
+*/
+public class MetricsEndpoint {
+    public static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+    private final int port;
+    private HttpServer server;
+
+    public MetricsEndpoint(ServerMetrics metrics, int port) {
+        this.metrics = metrics;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null)
+            return;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+
+        server.stop(0);
+        server = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // Responde cada consulta com os valores atuais de todas as métricas
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package conexao;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+    A classe Protocol define o protocolo binário usado entre o TCPClient e o TCPServer.
+
+    Todas as informações são enviadas em quadros (frames) binários, sem Base64 e sem linhas de texto, o que reduz o tamanho das mensagens e
+    permite qualquer byte no conteúdo (inclusive quebras de linha). Cada quadro tem um cabeçalho de 6 bytes seguido do conteúdo:
+
+        +--------+------+-------------+-----------------------+
+        | versão | tipo | tamanho (4) | conteúdo (tamanho)    |
+        +--------+------+-------------+-----------------------+
+
+    A versão permite evoluir o protocolo no futuro: um quadro com uma versão desconhecida é rejeitado.
+
+    Sequência de uma sessão:
+        1- Servidor -> PORT_REQUEST: texto da solicitação da porta de entrada.
+        2- Cliente  -> HELLO: porta de entrada, algoritmos de troca de chaves e cifras suportados e se aceita o canal de dados.
+        3- Servidor -> CONFIG: texto da mensagem de configuração.
+        3.1- Servidor -> HANDOFF: porta de dados e ficha de transferência, só quando o cliente aceita o canal de dados.
+        4- Servidor -> SERVER_KEY: algoritmo e cifra escolhidos e a chave pública do servidor (X.509).
+        5- Cliente  -> CLIENT_KEY: chave pública do cliente (X.509).
+        5.1- Servidor -> SESSION_TICKET: bilhete de retomada da sessão e o seu tempo de vida em segundos.
+        6- Cliente  -> MESSAGE: mensagem criptografada, respondida pelo servidor com RESPONSE. Repetido quantas vezes for necessário.
+        7- Cliente  -> CLOSE: encerra a sessão, respondida pelo servidor com RESPONSE (STATUS_CLOSED) antes de fechar a conexão.
+
+    Retomada de sessão (classes SessionTicket e SessionCache), no lugar das etapas 2 a 5.1 quando o cliente tem um bilhete do servidor:
+        2- Cliente  -> RESUME: porta de entrada, bilhete, nonce do cliente e se aceita o canal de dados.
+        3- Servidor -> CONFIG (e HANDOFF), seguido de RESUME_ACCEPTED: cifra da sessão, nonce do servidor, novo bilhete e o seu tempo de vida em
+           segundos. Se o bilhete não for encontrado, o servidor responde RESUME_REJECTED e o cliente continua com o HELLO da etapa 2.
+
+    Envio em sequência (pipelining), em qualquer momento da sessão em vez de quadros MESSAGE:
+        1- Cliente  -> SEQUENCED_MESSAGE: número de sequência e mensagem criptografada. O cliente envia várias mensagens sem esperar
+           resposta, até o limite da sua janela de mensagens pendentes.
+        2- Servidor -> ACK: confirmação cumulativa com o número de sequência da última mensagem processada (todas as anteriores também
+           foram processadas) e a quantidade de mensagens recusadas desde a confirmação anterior. O servidor processa em lote as mensagens
+           que já chegaram e envia uma única confirmação para o lote.
+
+    Canal de dados (classe SessionHandoff), quando o cliente aceita o canal de dados:
+        - O quadro HANDOFF traz a porta de dados do servidor e uma ficha de uso único, ou a porta 0 quando o servidor não tem porta de
+          dados (a sessão continua na mesma conexão).
+        - Com uma porta de dados, depois da etapa 5 (ou da retomada) o cliente fecha a conexão de entrada, se conecta à porta de dados e
+          envia o quadro ATTACH com a ficha, seguido das mensagens da sessão (etapa 6 em diante) sem esperar resposta. O SESSION_TICKET
+          da etapa 5.1 é enviado pela conexão de dados. Uma ficha desconhecida ou vencida é respondida com ERROR.
+
+    Atualização de chave (catraca de chaves), em qualquer momento da sessão entre duas mensagens:
+        - Cliente -> KEY_UPDATE: número da nova geração da chave. A partir deste quadro, os dois lados usam a chave derivada da chave
+          anterior com CipherSuite.nextKey, sem resposta e sem interromper as mensagens em sequência que estão em trânsito.
+
+    Recusa por sobrecarga (classe AdmissionControl), no lugar do PORT_REQUEST da etapa 1 ou do CONFIG da etapa 3:
+        - Servidor -> BUSY: tempo sugerido em milissegundos para tentar de novo e o motivo da recusa. O servidor fecha a conexão em
+          seguida.
+
+    Envio de arquivos (classe ChunkedCipher), em qualquer momento da sessão em vez de um quadro MESSAGE:
+        1- Cliente  -> FILE_START: nome do arquivo, salt da transferência e tamanho dos blocos.
+        2- Cliente  -> FILE_CHUNK: bloco criptografado do arquivo. Repetido sem esperar resposta do servidor.
+        3- Cliente  -> FILE_END: último bloco criptografado (pode ser vazio), respondido pelo servidor com RESPONSE.
+
+    Textos são codificados em UTF-8 precedidos do tamanho em 2 bytes; dados binários são precedidos do tamanho em 4 bytes.
+*/
+public final class Protocol {
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 6;
+    public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+    /*
+        Maior conteúdo aceito pelo servidor antes da sessão estabelecida: os quadros da troca de chaves são pequenos, e um cliente ainda não
+        autenticado não pode fazer o servidor reservar 16 MiB por conexão.
+    */
+    public static final int MAX_HANDSHAKE_PAYLOAD_LENGTH = 4 * 1024;
+
+    // Tipos de quadro
+    public static final byte PORT_REQUEST = 1;
+    public static final byte HELLO = 2;
+    public static final byte CONFIG = 3;
+    public static final byte SERVER_KEY = 4;
+    public static final byte CLIENT_KEY = 5;
+    public static final byte MESSAGE = 6;
+    public static final byte RESPONSE = 7;
+    public static final byte CLOSE = 8;
+    public static final byte ERROR = 9;
+    public static final byte FILE_START = 10;
+    public static final byte FILE_CHUNK = 11;
+    public static final byte FILE_END = 12;
+    public static final byte SESSION_TICKET = 13;
+    public static final byte RESUME = 14;
+    public static final byte RESUME_ACCEPTED = 15;
+    public static final byte RESUME_REJECTED = 16;
+    public static final byte SEQUENCED_MESSAGE = 17;
+    public static final byte ACK = 18;
+    public static final byte BUSY = 19;
+    public static final byte KEY_UPDATE = 20;
+    public static final byte HANDOFF = 21;
+    public static final byte ATTACH = 22;
+
+    // Maior janela de mensagens enviadas em sequência sem confirmação
+    public static final int MAX_WINDOW_SIZE = 1024;
+
+    // Situações enviadas no quadro RESPONSE
+    public static final byte STATUS_SUCCESS = 0;
+    public static final byte STATUS_WRONG_KEY = 1;
+    public static final byte STATUS_CLOSED = 2;
+
+    public static final String RESPONSE_SUCCESS = "Mensagem recebida com sucesso!";
+    public static final String RESPONSE_WRONG_KEY = "Chave diferente. Mensagem não enviada.";
+    public static final String RESPONSE_CLOSED = "Sessão encerrada.";
+
+    private Protocol() {
+    }
+
+    /*
+        Conteúdo do quadro HELLO: porta de entrada, algoritmos de troca de chaves e cifras oferecidos pelo cliente e se ele aceita o canal de
+        dados. O último byte é opcional: um HELLO sem ele vale como um cliente que não aceita o canal de dados.
+    */
+    public static ByteBuffer hello(int entryPort, String keyExchangeOffer, String cipherSuiteOffer, boolean dataChannel) {
+        byte[] keyExchanges = keyExchangeOffer.getBytes(StandardCharsets.UTF_8);
+        byte[] cipherSuites = cipherSuiteOffer.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(4 + 2 + keyExchanges.length + 2 + cipherSuites.length + 1);
+        payload.putInt(entryPort);
+        putString(payload, keyExchanges);
+        putString(payload, cipherSuites);
+        payload.put((byte) (dataChannel ? 1 : 0));
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro SERVER_KEY: algoritmo e cifra escolhidos pelo servidor e a sua chave pública
+    public static ByteBuffer serverKey(String keyExchangeName, String cipherSuiteName, byte[] publicKey) {
+        byte[] keyExchange = keyExchangeName.getBytes(StandardCharsets.UTF_8);
+        byte[] cipherSuite = cipherSuiteName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + keyExchange.length + 2 + cipherSuite.length + 4 + publicKey.length);
+        putString(payload, keyExchange);
+        putString(payload, cipherSuite);
+        putBytes(payload, publicKey);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro SESSION_TICKET: bilhete de retomada e o seu tempo de vida em segundos
+    public static ByteBuffer sessionTicket(byte[] ticketId, int lifetimeSeconds) {
+        ByteBuffer payload = ByteBuffer.allocate(4 + ticketId.length + 4);
+        putBytes(payload, ticketId);
+        payload.putInt(lifetimeSeconds);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro RESUME: porta de entrada, bilhete de retomada, nonce do cliente e se ele aceita o canal de dados (opcional)
+    public static ByteBuffer resume(int entryPort, byte[] ticketId, byte[] clientNonce, boolean dataChannel) {
+        ByteBuffer payload = ByteBuffer.allocate(4 + 4 + ticketId.length + 4 + clientNonce.length + 1);
+        payload.putInt(entryPort);
+        putBytes(payload, ticketId);
+        putBytes(payload, clientNonce);
+        payload.put((byte) (dataChannel ? 1 : 0));
+        return payload.flip();
+    }
+
+    // Lê do fim do HELLO ou do RESUME se o cliente aceita o canal de dados
+    public static boolean getDataChannel(ByteBuffer buffer) {
+        return buffer.hasRemaining() && buffer.get() != 0;
+    }
+
+    // Conteúdo do quadro HANDOFF: porta de dados (0 mantém a sessão na mesma conexão) e ficha de transferência
+    public static ByteBuffer handoff(int dataPort, byte[] token) {
+        ByteBuffer payload = ByteBuffer.allocate(4 + 4 + token.length);
+        payload.putInt(dataPort);
+        putBytes(payload, token);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro RESUME_ACCEPTED: cifra da sessão retomada, nonce do servidor, novo bilhete e o seu tempo de vida em segundos
+    public static ByteBuffer resumeAccepted(String cipherSuiteName, byte[] serverNonce, byte[] ticketId, int lifetimeSeconds) {
+        byte[] cipherSuite = cipherSuiteName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + cipherSuite.length + 4 + serverNonce.length + 4 + ticketId.length + 4);
+        putString(payload, cipherSuite);
+        putBytes(payload, serverNonce);
+        putBytes(payload, ticketId);
+        payload.putInt(lifetimeSeconds);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro FILE_START: nome do arquivo, salt da transferência e tamanho dos blocos
+    public static ByteBuffer fileStart(String fileName, byte[] salt, int chunkSize) {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + name.length + 4 + salt.length + 4);
+        putString(payload, name);
+        putBytes(payload, salt);
+        payload.putInt(chunkSize);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro SEQUENCED_MESSAGE: número de sequência e mensagem criptografada
+    public static ByteBuffer sequencedMessage(long sequence, byte[] encryptedMessage) {
+        ByteBuffer payload = ByteBuffer.allocate(8 + encryptedMessage.length);
+        payload.putLong(sequence);
+        payload.put(encryptedMessage);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro ACK: última mensagem processada e quantidade de mensagens recusadas desde a confirmação anterior
+    public static ByteBuffer ack(long sequence, int rejected) {
+        ByteBuffer payload = ByteBuffer.allocate(8 + 4);
+        payload.putLong(sequence);
+        payload.putInt(rejected);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro BUSY: tempo sugerido para tentar de novo, em milissegundos, e o motivo da recusa
+    public static ByteBuffer busy(long retryAfterMillis, String reason) {
+        byte[] bytes = reason.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(4 + 2 + bytes.length);
+        payload.putInt((int) Math.min(Integer.MAX_VALUE, retryAfterMillis));
+        putString(payload, bytes);
+        return payload.flip();
+    }
+
+    // Conteúdo do quadro KEY_UPDATE: número da nova geração da chave
+    public static ByteBuffer keyUpdate(long generation) {
+        return ByteBuffer.allocate(8).putLong(0, generation);
+    }
+
+    // Conteúdo do quadro RESPONSE: situação e texto da resposta
+    public static ByteBuffer response(byte status, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 2 + bytes.length);
+        payload.put(status);
+        putString(payload, bytes);
+        return payload.flip();
+    }
+
+    // Conteúdo de um quadro formado apenas por um texto (PORT_REQUEST, CONFIG e ERROR)
+    public static ByteBuffer text(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Lê o conteúdo restante do quadro como texto
+    public static String text(ByteBuffer payload) {
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    // Lê um texto precedido do tamanho em 2 bytes
+    public static String getString(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Lê dados binários precedidos do tamanho em 4 bytes
+    public static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalArgumentException("Tamanho inválido no quadro: " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    // Copia o conteúdo restante do buffer para um array
+    public static byte[] remaining(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,24 @@
+package conexao;
+
+import java.io.IOException;
+
+/*
+    Exceção lançada no cliente quando o servidor recusa a conexão com o quadro BUSY (classe AdmissionControl): limite de conexões do
+    endereço, limite de conexões do servidor ou nenhuma vaga para a troca de chaves. A conexão já foi fechada pelo servidor; o cliente pode
+    tentar de novo depois do tempo sugerido.
+*/
+public class ServerBusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ServerBusyException(String reason, long retryAfterMillis) {
+        super("Servidor ocupado: " + reason + " Tente novamente em " + retryAfterMillis + " ms.");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    // Tempo sugerido pelo servidor antes de uma nova tentativa, em milissegundos
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
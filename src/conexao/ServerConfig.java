@@ -0,0 +1,251 @@
+package conexao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import auxiliar.KeyExchanges;
+import auxiliar.KeyPairPool;
+
+/*
+    A classe ServerConfig reúne as configurações do servidor, que antes eram todas digitadas no menu.
+
+    As configurações são lidas, nesta ordem (cada fonte substitui a anterior):
+        1- Os valores padrão definidos abaixo.
+        2- Um arquivo de propriedades informado com --config=arquivo (veja o servidor.properties na raiz do projeto).
+        3- Opções da linha de comando no formato --chave=valor, com as mesmas chaves do arquivo (por exemplo --porta=5000). Uma opção sem
+           valor (por exemplo --daemon) vale como "true".
+
+    No modo interativo as configurações são os valores iniciais do menu: a porta configurada é sugerida no pedido da porta (Enter a
+    aceita) e, com metricas.porta, o endpoint de métricas já é aberto na inicialização. No modo daemon (--daemon) elas são as únicas
+    fontes, e nada é lido do teclado.
+*/
+public class ServerConfig {
+    public static final String CONFIG_FILE = "config";
+    public static final String DAEMON = "daemon";
+    public static final String PORT = "porta";
+    public static final String MAX_CONNECTIONS = "conexoes.maximo";
+    public static final String ACCEPTORS = "aceitadores";
+    public static final String DATA_PORT = "dados.porta";
+    public static final String HANDOFF_TIMEOUT_MILLIS = "dados.prazo.ms";
+    public static final String SHUTDOWN_TIMEOUT_MILLIS = "encerramento.espera.ms";
+    public static final String POOL_LOW_WATERMARK = "pools.marca.inferior";
+    public static final String POOL_HIGH_WATERMARK = "pools.marca.superior";
+    public static final String POOL_GENERATOR_THREADS = "pools.threads";
+    public static final String SESSION_CACHE_MAX_ENTRIES = "sessoes.cache.tamanho";
+    public static final String SESSION_CACHE_TTL_SECONDS = "sessoes.cache.validade.segundos";
+    public static final String SESSION_CACHE_STRIPES = "sessoes.cache.faixas";
+    public static final String METRICS_PORT = "metricas.porta";
+    public static final String VERBOSE = "registro.detalhado";
+    public static final String RECEIVE_DIRECTORY = "arquivos.pasta";
+    public static final String BULK_CIPHER_PARALLELISM = "arquivos.paralelismo";
+    public static final String ADMISSION_ENABLED = "admissao.ativa";
+    public static final String MAX_HANDSHAKES = "admissao.trocas.simultaneas";
+    public static final String HANDSHAKE_WAIT_MILLIS = "admissao.trocas.espera.ms";
+    public static final String HANDSHAKE_TIMEOUT_MILLIS = "admissao.trocas.prazo.ms";
+    public static final String CONNECTIONS_PER_SECOND_PER_ADDRESS = "admissao.por.ip.segundo";
+    public static final String BURST_PER_ADDRESS = "admissao.por.ip.rajada";
+    public static final String SESSION_IDLE_MILLIS = "sessoes.ociosidade.ms";
+
+    private static final Properties DEFAULTS = new Properties();
+
+    static {
+        DEFAULTS.setProperty(DAEMON, "false");
+        DEFAULTS.setProperty(PORT, "5000");
+        DEFAULTS.setProperty(MAX_CONNECTIONS, "64");
+        DEFAULTS.setProperty(ACCEPTORS, "0");
+        DEFAULTS.setProperty(DATA_PORT, "0");
+        DEFAULTS.setProperty(HANDOFF_TIMEOUT_MILLIS, "10000");
+        DEFAULTS.setProperty(SHUTDOWN_TIMEOUT_MILLIS, "5000");
+        DEFAULTS.setProperty(POOL_LOW_WATERMARK, "8");
+        DEFAULTS.setProperty(POOL_HIGH_WATERMARK, "32");
+        DEFAULTS.setProperty(POOL_GENERATOR_THREADS, "1");
+        DEFAULTS.setProperty(SESSION_CACHE_MAX_ENTRIES, "10000");
+        DEFAULTS.setProperty(SESSION_CACHE_TTL_SECONDS, "600");
+        DEFAULTS.setProperty(SESSION_CACHE_STRIPES, "16");
+        DEFAULTS.setProperty(METRICS_PORT, "0");
+        DEFAULTS.setProperty(VERBOSE, "false");
+        DEFAULTS.setProperty(RECEIVE_DIRECTORY, ServerContext.DEFAULT_RECEIVE_DIRECTORY.toString());
+        DEFAULTS.setProperty(BULK_CIPHER_PARALLELISM, "0");
+        DEFAULTS.setProperty(ADMISSION_ENABLED, "true");
+        DEFAULTS.setProperty(MAX_HANDSHAKES, "0");
+        DEFAULTS.setProperty(HANDSHAKE_WAIT_MILLIS, "200");
+        DEFAULTS.setProperty(HANDSHAKE_TIMEOUT_MILLIS, "30000");
+        DEFAULTS.setProperty(CONNECTIONS_PER_SECOND_PER_ADDRESS, "0");
+        DEFAULTS.setProperty(BURST_PER_ADDRESS, "50");
+        DEFAULTS.setProperty(SESSION_IDLE_MILLIS, "0");
+    }
+
+    private final Properties properties;
+
+    private ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    // Configuração apenas com os valores padrão
+    public static ServerConfig defaults() {
+        return new ServerConfig(new Properties(DEFAULTS));
+    }
+
+    // Lê o arquivo informado em --config (se houver) e aplica as opções da linha de comando por cima dele
+    public static ServerConfig load(String[] args) throws IOException {
+        Properties options = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("Opção inválida: " + arg);
+            int separator = arg.indexOf('=');
+            if (separator < 0)
+                options.setProperty(arg.substring(2), "true");
+            else
+                options.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        Properties properties = new Properties(DEFAULTS);
+        String configFile = options.getProperty(CONFIG_FILE);
+        if (configFile != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(configFile), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        options.remove(CONFIG_FILE);
+        properties.putAll(options);
+
+        // Rejeita chaves desconhecidas, que normalmente são erros de digitação
+        for (String key : properties.stringPropertyNames()) {
+            if (DEFAULTS.getProperty(key) == null)
+                throw new IllegalArgumentException("Configuração desconhecida: " + key);
+        }
+        return new ServerConfig(properties);
+    }
+
+    public String getString(String key) {
+        return properties.getProperty(key).trim();
+    }
+
+    public int getInt(String key) {
+        try {
+            return Integer.parseInt(getString(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + key + ": " + getString(key));
+        }
+    }
+
+    public long getLong(String key) {
+        try {
+            return Long.parseLong(getString(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + key + ": " + getString(key));
+        }
+    }
+
+    public double getDouble(String key) {
+        try {
+            return Double.parseDouble(getString(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + key + ": " + getString(key));
+        }
+    }
+
+    public boolean getBoolean(String key) {
+        return Boolean.parseBoolean(getString(key));
+    }
+
+    public boolean isDaemon() {
+        return getBoolean(DAEMON);
+    }
+
+    // Cria os pools de chaves com as marcas configuradas (ainda não iniciados)
+    public Map<String, KeyPairPool> newKeyPairPools() throws NoSuchAlgorithmException {
+        return KeyExchanges.createPools(getInt(POOL_LOW_WATERMARK), getInt(POOL_HIGH_WATERMARK), getInt(POOL_GENERATOR_THREADS));
+    }
+
+    // Cria o cache de sessões com o limite, a validade e o número de faixas configurados
+    public SessionCache newSessionCache() {
+        return new SessionCache(getInt(SESSION_CACHE_MAX_ENTRIES), getLong(SESSION_CACHE_TTL_SECONDS) * 1000, getInt(SESSION_CACHE_STRIPES));
+    }
+
+    /*
+        Pool que descriptografa em paralelo os blocos dos arquivos recebidos, com o paralelismo configurado: 0 usa o pool comum da JVM (um
+        núcleo a menos que o processador) quando há mais de um núcleo, 1 descriptografa cada arquivo na thread da própria conexão
+        (retorna null) e um valor maior cria um pool próprio com esse número de threads. As threads de um ForkJoinPool são daemon e
+        terminam sozinhas quando ficam ociosas.
+    */
+    public ForkJoinPool newBulkCipherPool() {
+        int parallelism = getInt(BULK_CIPHER_PARALLELISM);
+        if (parallelism < 0)
+            throw new IllegalArgumentException("Valor inválido para " + BULK_CIPHER_PARALLELISM + ": " + parallelism);
+        if (parallelism == 0)
+            return Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
+        return parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /*
+        Cria o controle de admissão com os limites configurados, ou retorna null se ele estiver desativado. O limite de trocas de chaves
+        simultâneas 0 usa o número de núcleos do processador, já que cada troca de chaves ocupa um núcleo; o limite de conexões por
+        endereço 0 desativa esse limite.
+    */
+    public AdmissionControl newAdmissionControl() {
+        if (!getBoolean(ADMISSION_ENABLED))
+            return null;
+        int maxHandshakes = getInt(MAX_HANDSHAKES);
+        try {
+            return new AdmissionControl(maxHandshakes > 0 ? maxHandshakes : Runtime.getRuntime().availableProcessors(),
+                    getLong(HANDSHAKE_WAIT_MILLIS), getLong(HANDSHAKE_TIMEOUT_MILLIS), getInt(SESSION_IDLE_MILLIS),
+                    getDouble(CONNECTIONS_PER_SECOND_PER_ADDRESS), getInt(BURST_PER_ADDRESS));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Controle de admissão inválido: " + e.getMessage());
+        }
+    }
+
+    // Aceitadores de cada porta do servidor: 0 usa um por núcleo do processador
+    public int getAcceptors() {
+        int acceptors = getInt(ACCEPTORS);
+        if (acceptors < 0)
+            throw new IllegalArgumentException("Valor inválido para " + ACCEPTORS + ": " + acceptors);
+        return acceptors > 0 ? acceptors : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Cria a transferência de sessões para a porta de dados configurada, ou retorna null se não houver porta de dados (porta 0)
+    public SessionHandoff newSessionHandoff() {
+        int dataPort = getInt(DATA_PORT);
+        if (dataPort == 0)
+            return null;
+        try {
+            return new SessionHandoff(dataPort, getLong(HANDOFF_TIMEOUT_MILLIS));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Transferência de sessões inválida: " + e.getMessage());
+        }
+    }
+
+    /*
+        Cria o contexto do servidor com a pasta de arquivos, o paralelismo, o controle de admissão, os aceitadores, a porta de dados e o
+        registro detalhado configurados
+    */
+    public ServerContext newContext(Map<String, KeyPairPool> keyPairPools, SessionCache sessionCache, ServerMetrics metrics) {
+        ServerContext context = new ServerContext(keyPairPools, sessionCache, metrics);
+        context.setReceiveDirectory(Path.of(getString(RECEIVE_DIRECTORY)));
+        context.setBulkCipherPool(newBulkCipherPool());
+        context.setAdmissionControl(newAdmissionControl());
+        context.setAcceptors(getAcceptors());
+        context.setSessionHandoff(newSessionHandoff());
+        context.setVerbose(getBoolean(VERBOSE));
+        return context;
+    }
+
+    // Texto de ajuda com todas as opções e os seus valores padrão
+    public static String usage() {
+        StringBuilder usage = new StringBuilder("Uso: java conexao.TCPServer [--daemon] [--config=arquivo.properties] [--chave=valor ...]");
+        usage.append(System.lineSeparator()).append("Configurações (valor padrão):");
+        for (String key : new TreeSet<>(DEFAULTS.stringPropertyNames()))
+            usage.append(System.lineSeparator()).append("  --").append(key).append('=').append(DEFAULTS.getProperty(key));
+        return usage.toString();
+    }
+}
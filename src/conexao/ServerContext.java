@@ -0,0 +1,191 @@
+package conexao;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import auxiliar.KeyPairPool;
+
+/*
+    A classe ServerContext reúne os recursos compartilhados por todas as conexões do servidor, entregues pelo ServerEngine a cada
+    ClientHandler:
+        - Os pools de pares de chaves de cada algoritmo de troca de chaves.
+        - O cache de sessões, com os bilhetes de retomada entregues aos clientes.
+        - As métricas do servidor (classe ServerMetrics).
+        - A pasta onde são gravados os arquivos recebidos dos clientes.
+        - O pool de threads que descriptografa em paralelo os blocos dos arquivos recebidos (sem pool, cada arquivo é descriptografado na
+          thread da própria conexão).
+        - O controle de admissão (classe AdmissionControl), que limita as conexões por endereço e as trocas de chaves simultâneas e aplica
+          os prazos da troca de chaves (sem ele, todas as conexões são atendidas, como antes).
+        - O número de threads aceitadoras de cada porta do motor do servidor, cada uma com o seu pool de trabalhadores.
+        - A transferência de sessões para a porta de dados (classe SessionHandoff); sem ela, cada sessão fica na conexão em que foi
+          estabelecida, como antes.
+        - A opção de registro detalhado, que exibe no console cada etapa das sessões (desativada por padrão).
+        - As sessões ociosas, que esperam o próximo quadro do cliente e são encerradas quando o motor começa a encerrar.
+
+    O contexto continua valendo quando o motor do servidor é recriado (troca de porta ou de limite de conexões), então as métricas e os
+    bilhetes já entregues não se perdem.
+*/
+public class ServerContext {
+    public static final Path DEFAULT_RECEIVE_DIRECTORY = Paths.get("arquivos-recebidos");
+
+    private final SessionCache sessionCache;
+    private final ServerMetrics metrics;
+    private volatile Map<String, KeyPairPool> keyPairPools;
+    private volatile Path receiveDirectory = DEFAULT_RECEIVE_DIRECTORY;
+    private volatile ForkJoinPool bulkCipherPool;
+    private volatile AdmissionControl admissionControl;
+    private volatile int acceptors = 1;
+    private volatile SessionHandoff sessionHandoff;
+    private volatile boolean verbose;
+    private final Set<FrameChannel> idleSessions = ConcurrentHashMap.newKeySet();
+    private volatile boolean draining;
+
+    // Os pools de chaves são opcionais: sem um pool para o algoritmo negociado, o par de chaves é gerado na própria conexão
+    public ServerContext(Map<String, KeyPairPool> keyPairPools) {
+        this(keyPairPools, null);
+    }
+
+    // Sem um cache de sessões, o servidor não entrega bilhetes e recusa todas as retomadas
+    public ServerContext(Map<String, KeyPairPool> keyPairPools, SessionCache sessionCache) {
+        this(keyPairPools, sessionCache, new ServerMetrics());
+    }
+
+    public ServerContext(Map<String, KeyPairPool> keyPairPools, SessionCache sessionCache, ServerMetrics metrics) {
+        this.sessionCache = sessionCache;
+        this.metrics = metrics;
+        setKeyPairPools(keyPairPools);
+
+        if (sessionCache != null) {
+            metrics.gauge("cripto_session_cache_size", null, "Bilhetes de retomada guardados no cache de sessões.", sessionCache::size);
+            metrics.counter("cripto_session_cache_hits_total", null, "Retomadas com o bilhete encontrado no cache.", sessionCache::getHits);
+            metrics.counter("cripto_session_cache_misses_total", null, "Retomadas recusadas (bilhete desconhecido ou vencido).", sessionCache::getMisses);
+            metrics.counter("cripto_session_cache_evictions_total", null, "Bilhetes descartados pelo limite do cache.", sessionCache::getEvictions);
+        }
+    }
+
+    public Map<String, KeyPairPool> getKeyPairPools() {
+        return keyPairPools;
+    }
+
+    // Troca os pools de chaves usados pelas próximas conexões e publica as suas métricas
+    public void setKeyPairPools(Map<String, KeyPairPool> keyPairPools) {
+        this.keyPairPools = keyPairPools;
+        if (keyPairPools == null)
+            return;
+
+        for (Map.Entry<String, KeyPairPool> entry : keyPairPools.entrySet()) {
+            String labels = "algorithm=\"" + entry.getKey() + "\"";
+            KeyPairPool pool = entry.getValue();
+            metrics.gauge("cripto_key_pair_pool_size", labels, "Pares de chaves prontos no pool de cada algoritmo.", pool::size);
+            metrics.counter("cripto_key_pair_pool_hits_total", labels, "Pares de chaves retirados prontos do pool.", pool::getHits);
+            metrics.counter("cripto_key_pair_pool_misses_total", labels, "Pares de chaves gerados na conexão com o pool vazio.", pool::getMisses);
+        }
+    }
+
+    public SessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Path getReceiveDirectory() {
+        return receiveDirectory;
+    }
+
+    public void setReceiveDirectory(Path receiveDirectory) {
+        this.receiveDirectory = receiveDirectory;
+    }
+
+    public ForkJoinPool getBulkCipherPool() {
+        return bulkCipherPool;
+    }
+
+    public void setBulkCipherPool(ForkJoinPool bulkCipherPool) {
+        this.bulkCipherPool = bulkCipherPool;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    // Define o controle de admissão usado pelas próximas conexões e publica as suas métricas
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+        if (admissionControl == null)
+            return;
+
+        metrics.gauge("cripto_handshakes_in_progress", null, "Trocas de chaves completas sendo calculadas.", admissionControl::getActiveHandshakes);
+        metrics.gauge("cripto_handshakes_max", null, "Limite de trocas de chaves completas simultâneas.", admissionControl::getMaxHandshakes);
+        metrics.gauge("cripto_admission_tracked_sources", null, "Endereços de origem acompanhados pelo limite por endereço.", admissionControl::getTrackedSources);
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    // Define quantas threads aceitadoras o próximo motor criado abre em cada porta
+    public void setAcceptors(int acceptors) {
+        if (acceptors < 1)
+            throw new IllegalArgumentException("O número de aceitadores deve ser maior que zero.");
+        this.acceptors = acceptors;
+    }
+
+    public SessionHandoff getSessionHandoff() {
+        return sessionHandoff;
+    }
+
+    // Define a porta de dados aberta pelo próximo motor criado e publica as suas métricas
+    public void setSessionHandoff(SessionHandoff sessionHandoff) {
+        this.sessionHandoff = sessionHandoff;
+        if (sessionHandoff != null)
+            metrics.gauge("cripto_session_handoffs_pending", null, "Fichas de transferência aguardando a conexão de dados.", sessionHandoff::getPendingHandoffs);
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /*
+        Registra a sessão que vai esperar o próximo quadro do cliente, sem nada recebido para ler. Retorna false se o servidor já está
+        encerrando: a sessão termina em vez de esperar.
+    */
+    boolean enterIdle(FrameChannel channel) {
+        idleSessions.add(channel);
+        if (!draining)
+            return true;
+        idleSessions.remove(channel);
+        return false;
+    }
+
+    void leaveIdle(FrameChannel channel) {
+        idleSessions.remove(channel);
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /*
+        Marca o início do encerramento do motor (ou o seu fim, quando um motor novo é iniciado com este contexto). Sem o tempo de
+        ociosidade (sessoes.ociosidade.ms=0), uma sessão parada esperaria o próximo quadro para sempre e seguraria o encerramento até o
+        fim de encerramento.espera.ms; por isso a leitura das sessões ociosas é encerrada na hora, e as sessões no meio de um quadro
+        terminam o quadro e são encerradas quando voltam a esperar.
+    */
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+        if (draining) {
+            for (FrameChannel channel : idleSessions)
+                channel.shutdownInput();
+        }
+    }
+}
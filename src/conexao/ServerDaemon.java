@@ -0,0 +1,107 @@
+package conexao;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import auxiliar.KeyPairPool;
+
+/*
+    A classe ServerDaemon executa o servidor sem interação do usuário (modo daemon), configurado apenas pela classe ServerConfig:
+
+        java -jar criptografia-e-redes.jar --daemon --config=servidor.properties --porta=5000
+
+    1- Inicia os pools de chaves, o cache de sessões, as métricas (JMX e, se configurada a porta, o endpoint do Prometheus) e o motor do
+       servidor, e exibe uma única linha com a porta e o tempo de inicialização.
+    2- Aguarda até o processo receber o sinal de encerramento (SIGTERM ou Ctrl+C). Nada é lido do teclado nem escrito no console durante o
+       atendimento, a não ser que o registro detalhado esteja ativado.
+    3- No encerramento, o gancho de desligamento da JVM deixa de aceitar conexões e dá às sessões em andamento o tempo configurado em
+       encerramento.espera.ms para terminar (drenagem), antes de parar os pools, o endpoint e o registro no JMX.
+*/
+public class ServerDaemon {
+    private final ServerConfig config;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Map<String, KeyPairPool> keyPairPools;
+    private ServerMetrics metrics;
+    private MetricsEndpoint metricsEndpoint;
+    private ServerEngine engine;
+
+    public ServerDaemon(ServerConfig config) {
+        this.config = config;
+    }
+
+    // Inicia o servidor em segundo plano; retorna assim que o socket do servidor está aberto
+    public synchronized void start() throws Exception {
+        long startNanos = System.nanoTime();
+
+        keyPairPools = config.newKeyPairPools();
+        keyPairPools.values().forEach(KeyPairPool::start);
+
+        metrics = new ServerMetrics();
+        metrics.registerMBean();
+        ServerContext context = config.newContext(keyPairPools, config.newSessionCache(), metrics);
+
+        int metricsPort = config.getInt(ServerConfig.METRICS_PORT);
+        if (metricsPort > 0) {
+            metricsEndpoint = new MetricsEndpoint(metrics, metricsPort);
+            metricsEndpoint.start();
+        }
+
+        engine = new ServerEngine(config.getInt(ServerConfig.PORT), config.getInt(ServerConfig.MAX_CONNECTIONS), context);
+        engine.start();
+
+        long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        SessionHandoff sessionHandoff = context.getSessionHandoff();
+        System.out.println("Servidor aguardando conexões na porta " + engine.getPort() + " (até " + engine.getMaxConnections() +
+                " simultâneas, " + engine.getAcceptors() + " aceitadores" +
+                (sessionHandoff != null ? ", dados na porta " + sessionHandoff.getPort() : "") +
+                (metricsEndpoint != null ? ", métricas na porta " + metricsEndpoint.getPort() : "") +
+                "), iniciado em " + startupMillis + " ms.");
+    }
+
+    // Drena as conexões em andamento e libera os recursos do servidor; pode ser chamado mais de uma vez
+    public synchronized void stop() {
+        if (stopped.getCount() == 0)
+            return;
+
+        // Os recursos são verificados um a um porque o encerramento também é usado quando a inicialização falha no meio
+        if (engine != null) {
+            long timeoutMillis = config.getLong(ServerConfig.SHUTDOWN_TIMEOUT_MILLIS);
+            System.out.println("Encerrando: aguardando até " + timeoutMillis + " ms as " + engine.getActiveConnections() + " conexões ativas...");
+            engine.shutdown(timeoutMillis);
+        }
+        if (keyPairPools != null)
+            keyPairPools.values().forEach(KeyPairPool::shutdown);
+        if (metricsEndpoint != null)
+            metricsEndpoint.stop();
+        if (metrics != null) {
+            try {
+                metrics.unregisterMBean();
+            } catch (JMException e) {
+                System.out.println("ERRO! Não foi possível remover as métricas do JMX: " + e.getMessage());
+            }
+        }
+        System.out.println("Servidor encerrado.");
+        stopped.countDown();
+    }
+
+    // Bloqueia até o servidor ser encerrado
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    // Inicia o servidor e o mantém ativo até o processo receber o sinal de encerramento
+    public static void run(ServerConfig config) throws Exception {
+        ServerDaemon daemon = new ServerDaemon(config);
+        try {
+            daemon.start();
+        } catch (Exception e) {
+            daemon.stop();
+            throw e;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "servidor-encerramento"));
+        daemon.awaitStop();
+    }
+}
@@ -0,0 +1,358 @@
+package conexao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    A classe ServerEngine é o motor do servidor TCP. Ela substitui o antigo loop do TCPServer, que aceitava um único cliente por vez e parava
+    completamente enquanto o menu esperava a próxima opção do usuário.
+
+    1- Threads aceitadoras ficam executando continuamente o accept() enquanto o servidor estiver ativo. O número de aceitadores de cada porta
+       vem do contexto; com SO_REUSEPORT (quando o sistema operacional oferece), cada aceitador tem o seu próprio socket na mesma porta e
+       o próprio sistema distribui as conexões entre eles, em vez de todas passarem por um único accept(). Sem SO_REUSEPORT, os
+       aceitadores dividem um único socket.
+    2- Cada aceitador entrega as conexões que aceita ao seu próprio pool de threads trabalhadoras (uma divisão, ou shard, do servidor), que
+       executa um ClientHandler por conexão. Assim os aceitadores não disputam a mesma fila de trabalho.
+    3- O número máximo de conexões simultâneas é configurável. Quando o limite é atingido, a thread aceitadora espera uma vaga antes de
+       aceitar a próxima conexão, e os novos clientes aguardam na fila do sistema operacional. Com o controle de admissão do contexto
+       (classe AdmissionControl), a conexão é aceita e recusada na hora com o quadro BUSY, e antes disso passa pelo limite de conexões
+       do seu endereço de origem.
+    4- O método shutdown() encerra o servidor de forma limpa: para de aceitar conexões, encerra as sessões que esperam o próximo quadro do
+       cliente, espera as conexões em andamento terminarem durante o tempo informado e, depois disso, fecha as que ainda estiverem
+       abertas.
+    5- Os recursos compartilhados pelas conexões (pools de chaves, cache de sessões, métricas, pasta de arquivos recebidos) são entregues a
+       cada ClientHandler em um ServerContext.
+    6- Com a transferência de sessões do contexto (classe SessionHandoff), o motor também abre a porta de dados, com o mesmo número de
+       aceitadores. As conexões de dados são atendidas pelo DataChannelHandler, que continua nelas as sessões estabelecidas na porta do
+       servidor. As conexões de dados ocupam vagas do mesmo limite de conexões e passam pelo mesmo controle de admissão.
+*/
+public class ServerEngine {
+    // Espera depois de uma falha no accept() com o servidor ativo, antes de tentar de novo
+    private static final long ACCEPT_RETRY_MILLIS = 50;
+
+    // Conexões aceitas por aceitador: uma série por aceitador, retirada no shutdown()
+    private static final String ACCEPTOR_CONNECTIONS = "cripto_acceptor_connections_total";
+
+    private final int port;
+    private final int maxConnections;
+    private final Semaphore connectionSlots;
+    private final ServerContext context;
+    private final Set<Socket> activeSockets = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private volatile boolean running;
+
+    // Verificado uma única vez: indica se o sistema operacional permite vários sockets do servidor na mesma porta
+    private static final boolean REUSE_PORT_SUPPORTED = supportsReusePort();
+
+    public ServerEngine(int port, int maxConnections, ServerContext context) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("O número máximo de conexões deve ser maior que zero.");
+
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.connectionSlots = new Semaphore(maxConnections);
+        this.context = context;
+    }
+
+    /*
+        Um aceitador do servidor: o socket em que ele aceita conexões (próprio, com SO_REUSEPORT, ou dividido com os outros aceitadores da
+        mesma porta), a sua thread e o seu pool de trabalhadores. Os trabalhadores ociosos terminam depois de um minuto, então os pools
+        de todos os aceitadores juntos não mantêm mais threads do que as conexões em atendimento pedem.
+    */
+    private final class Listener {
+        final ServerSocket serverSocket;
+        final boolean dataChannel;
+        final String name;
+        final ThreadPoolExecutor workers;
+        final Thread acceptor;
+        final LongAdder accepted = new LongAdder();
+
+        Listener(ServerSocket serverSocket, boolean dataChannel, String name) {
+            this.serverSocket = serverSocket;
+            this.dataChannel = dataChannel;
+            this.name = name;
+            this.workers = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    namedThreads("servidor-trabalhador-" + name + "-"));
+            this.workers.allowCoreThreadTimeOut(true);
+            this.acceptor = new Thread(() -> acceptLoop(this), "servidor-aceitador-" + name);
+        }
+
+        String label() {
+            return "acceptor=\"" + name + "\"";
+        }
+    }
+
+    // Abre os sockets do servidor (e da porta de dados, se houver) e inicia as threads aceitadoras
+    public synchronized void start() throws IOException {
+        if (running)
+            return;
+
+        SessionHandoff sessionHandoff = context.getSessionHandoff();
+        if (sessionHandoff != null && sessionHandoff.getPort() == port)
+            throw new IllegalArgumentException("A porta de dados deve ser diferente da porta do servidor (" + port + ").");
+
+        listeners.clear();
+        try {
+            openListeners(port, false);
+            if (sessionHandoff != null)
+                openListeners(sessionHandoff.getPort(), true);
+        } catch (IOException e) {
+            for (Listener listener : listeners) {
+                closeQuietly(listener.serverSocket);
+                listener.workers.shutdown();
+            }
+            listeners.clear();
+            throw e;
+        }
+        context.setDraining(false);
+        running = true;
+
+        // Publica as métricas deste motor, substituindo as do motor anterior quando o servidor é recriado
+        ServerMetrics metrics = context.getMetrics();
+        metrics.gauge("cripto_connections_active", null, "Conexões em atendimento.", this::getActiveConnections);
+        metrics.gauge("cripto_connections_max", null, "Limite de conexões simultâneas.", () -> maxConnections);
+        metrics.gauge("cripto_worker_queue_depth", null, "Conexões aceitas aguardando uma thread trabalhadora.", this::getQueuedConnections);
+        for (Listener listener : listeners)
+            metrics.counter(ACCEPTOR_CONNECTIONS, listener.label(), "Conexões aceitas por cada aceitador.", listener.accepted::sum);
+
+        for (Listener listener : listeners)
+            listener.acceptor.start();
+    }
+
+    /*
+        Cria os aceitadores de uma porta. Com SO_REUSEPORT cada aceitador abre o seu próprio socket na porta; a porta 0 (escolhida pelo
+        sistema) é resolvida no primeiro socket para que os outros usem a mesma.
+    */
+    private void openListeners(int listenPort, boolean dataChannel) throws IOException {
+        int acceptors = context.getAcceptors();
+        boolean reusePort = acceptors > 1 && REUSE_PORT_SUPPORTED;
+        ServerSocket shared = null;
+        for (int i = 1; i <= acceptors; i++) {
+            ServerSocket serverSocket = shared;
+            if (serverSocket == null || reusePort) {
+                serverSocket = open(listenPort, reusePort);
+                listenPort = serverSocket.getLocalPort();
+                shared = serverSocket;
+            }
+            listeners.add(new Listener(serverSocket, dataChannel, listenPort + "-" + i));
+        }
+    }
+
+    private static ServerSocket open(int listenPort, boolean reusePort) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            if (reusePort)
+                serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            serverSocket.bind(new InetSocketAddress(listenPort));
+        } catch (IOException e) {
+            closeQuietly(serverSocket);
+            throw e;
+        }
+        return serverSocket;
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            return serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /*
+        Loop de uma thread aceitadora. Antes de cada accept() é reservada uma vaga no semáforo connectionSlots, garantindo que nunca existam mais
+        conexões em atendimento do que o limite configurado. A vaga é devolvida quando o ClientHandler termina. Com o controle de admissão,
+        a vaga é reservada depois do accept() e sem espera (admit).
+    */
+    private void acceptLoop(Listener listener) {
+        while (running) {
+            AdmissionControl admissionControl = context.getAdmissionControl();
+            if (admissionControl == null) {
+                try {
+                    connectionSlots.acquire();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+
+            Socket clientSocket;
+            try {
+                clientSocket = listener.serverSocket.accept();
+            } catch (IOException e) {
+                if (admissionControl == null)
+                    connectionSlots.release();
+                // O socket é fechado pelo shutdown(), o que interrompe o accept()
+                if (!running)
+                    continue;
+
+                /*
+                    Com o servidor ativo, a falha é real (por exemplo, sem descritores de arquivo livres) e tende a se repetir no próximo
+                    accept(): a thread espera um pouco antes de tentar de novo, em vez de ocupar um núcleo inteiro repetindo o erro.
+                */
+                System.out.println("Erro ao aceitar conexão: " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+
+            if (admissionControl != null && !admit(clientSocket, admissionControl))
+                continue;
+
+            activeSockets.add(clientSocket);
+            listener.accepted.increment();
+            context.getMetrics().connectionAccepted();
+            Runnable handler = listener.dataChannel ? new DataChannelHandler(clientSocket, context) : new ClientHandler(clientSocket, context);
+            try {
+                listener.workers.execute(() -> {
+                    try {
+                        handler.run();
+                    } finally {
+                        activeSockets.remove(clientSocket);
+                        connectionSlots.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // O pool já foi encerrado
+                activeSockets.remove(clientSocket);
+                connectionSlots.release();
+                closeQuietly(clientSocket);
+            }
+        }
+    }
+
+    /*
+        Aplica o limite de conexões do endereço de origem e reserva uma vaga sem esperar. A conexão recusada recebe o quadro BUSY e é fechada
+        na própria thread aceitadora, sem passar pelo pool de trabalhadores. Retorna se a conexão foi admitida.
+    */
+    private boolean admit(Socket clientSocket, AdmissionControl admissionControl) {
+        ServerMetrics metrics = context.getMetrics();
+        long retryAfterMillis = admissionControl.admitSource(clientSocket.getInetAddress());
+        if (retryAfterMillis > 0) {
+            metrics.connectionRateLimited();
+            FrameChannel.writeAndClose(clientSocket, Protocol.BUSY, Protocol.busy(retryAfterMillis, "limite de conexões do endereço atingido."));
+            return false;
+        }
+        if (!connectionSlots.tryAcquire()) {
+            metrics.connectionLimitReached();
+            FrameChannel.writeAndClose(clientSocket, Protocol.BUSY, Protocol.busy(admissionControl.getRetryAfterMillis(),
+                    "limite de " + maxConnections + " conexões simultâneas atingido."));
+            return false;
+        }
+        return true;
+    }
+
+    /*
+        Encerra o servidor. Os sockets do servidor são fechados para interromper os accept(), os pools de trabalhadores deixam de receber
+        tarefas e as conexões em andamento têm até timeoutMillis milissegundos para terminar. As que não terminarem nesse tempo são fechadas
+        à força.
+    */
+    public synchronized void shutdown(long timeoutMillis) {
+        if (!running)
+            return;
+
+        running = false;
+        for (Listener listener : listeners) {
+            closeQuietly(listener.serverSocket);
+            listener.acceptor.interrupt();
+            listener.workers.shutdown();
+        }
+        // As trocas de chaves, as mensagens e os arquivos em andamento terminam; as sessões paradas são encerradas na hora
+        context.setDraining(true);
+
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            boolean terminated = true;
+            for (Listener listener : listeners)
+                terminated &= listener.workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!terminated) {
+                for (Socket socket : activeSockets)
+                    closeQuietly(socket);
+                for (Listener listener : listeners)
+                    listener.workers.shutdownNow();
+            }
+            for (Listener listener : listeners)
+                listener.acceptor.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        /*
+            As séries dos aceitadores deste motor são retiradas: um motor novo pode abrir outras portas ou outro número de aceitadores, e
+            as séries antigas continuariam publicadas, segurando os aceitadores e os pools encerrados.
+        */
+        ServerMetrics metrics = context.getMetrics();
+        for (Listener listener : listeners)
+            metrics.remove(ACCEPTOR_CONNECTIONS, listener.label());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    public int getActiveConnections() {
+        return activeSockets.size();
+    }
+
+    // Conexões aceitas aguardando uma thread trabalhadora, somadas em todos os aceitadores
+    public int getQueuedConnections() {
+        int queued = 0;
+        for (Listener listener : listeners)
+            queued += listener.workers.getQueue().size();
+        return queued;
+    }
+
+    // Threads aceitadoras abertas pelo motor, somando a porta do servidor e a porta de dados
+    public int getAcceptors() {
+        return listeners.size();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null)
+                closeable.close();
+        } catch (IOException e) {
+            // Nada a fazer, o recurso já está sendo descartado
+        }
+    }
+
+    // Cria threads nomeadas para facilitar a identificação no console e em ferramentas de diagnóstico
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
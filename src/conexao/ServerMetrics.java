@@ -0,0 +1,377 @@
+package conexao;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import auxiliar.LatencyHistogram;
+
+/*
+    A classe ServerMetrics reúne as métricas do servidor, que antes só eram acompanhadas pelas mensagens exibidas no console.
+
+    1- Contadores (conexões aceitas, trocas de chaves, mensagens, bytes recebidos e descriptografados, falhas de descriptografia, ...) são
+       LongAdder, que podem ser incrementados por várias threads ao mesmo tempo sem disputa.
+    2- Medidores (conexões ativas, fila de trabalho, pares prontos nos pools, bilhetes no cache, ...) são lidos no momento da consulta.
+    3- Tempos (troca de chaves e acordo de chaves) são registrados em histogramas (classe LatencyHistogram), que fornecem os percentis.
+
+    As métricas são publicadas de duas formas:
+        - Como um MBean JMX (conexao:type=ServerMetrics), visível no JConsole ou no VisualVM.
+        - No formato de texto do Prometheus, pelo endpoint HTTP local da classe MetricsEndpoint.
+*/
+public class ServerMetrics implements DynamicMBean {
+    public static final String OBJECT_NAME = "conexao:type=ServerMetrics";
+
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String SUMMARY = "summary";
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    private final LongAdder connectionsAccepted = new LongAdder();
+    private final LongAdder communicationErrors = new LongAdder();
+    private final LongAdder rateLimitedConnections = new LongAdder();
+    private final LongAdder connectionLimitRejections = new LongAdder();
+    private final LongAdder shedHandshakes = new LongAdder();
+    private final LongAdder handshakeTimeouts = new LongAdder();
+    private final LongAdder sessionTimeouts = new LongAdder();
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder acknowledgementsSent = new LongAdder();
+    private final LongAdder keyUpdates = new LongAdder();
+    private final LongAdder handoffsAttached = new LongAdder();
+    private final LongAdder handoffsRejected = new LongAdder();
+    private final LongAdder handoffsExpired = new LongAdder();
+    private final LongAdder filesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+    private final LongAdder decryptionFailures = new LongAdder();
+    private final Timer handshakeTime = new Timer();
+    private final Timer keyAgreementTime = new Timer();
+
+    // Métricas na ordem de registro, pelo nome completo (com os rótulos do Prometheus)
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    public ServerMetrics() {
+        counter("cripto_connections_accepted_total", null, "Conexões aceitas pelo servidor.", connectionsAccepted::sum);
+        counter("cripto_communication_errors_total", null, "Conexões encerradas por erro de comunicação.", communicationErrors::sum);
+        counter("cripto_connections_rejected_total", "reason=\"rate_limit\"", "Conexões recusadas com o quadro BUSY, por motivo.", rateLimitedConnections::sum);
+        counter("cripto_connections_rejected_total", "reason=\"connection_limit\"", "Conexões recusadas com o quadro BUSY, por motivo.", connectionLimitRejections::sum);
+        counter("cripto_connections_rejected_total", "reason=\"handshake_busy\"", "Conexões recusadas com o quadro BUSY, por motivo.", shedHandshakes::sum);
+        counter("cripto_connection_timeouts_total", "phase=\"handshake\"", "Conexões fechadas por tempo esgotado, por etapa.", handshakeTimeouts::sum);
+        counter("cripto_connection_timeouts_total", "phase=\"session\"", "Conexões fechadas por tempo esgotado, por etapa.", sessionTimeouts::sum);
+        gauge("cripto_sessions_active", null, "Sessões estabelecidas em andamento.", activeSessions::sum);
+        counter("cripto_handshakes_total", "type=\"full\"", "Sessões estabelecidas, por tipo (troca de chaves completa ou retomada).", fullHandshakes::sum);
+        counter("cripto_handshakes_total", "type=\"resumed\"", "Sessões estabelecidas, por tipo (troca de chaves completa ou retomada).", resumedHandshakes::sum);
+        counter("cripto_messages_received_total", null, "Mensagens criptografadas recebidas.", messagesReceived::sum);
+        counter("cripto_acknowledgements_total", null, "Confirmações cumulativas enviadas para lotes de mensagens em sequência.", acknowledgementsSent::sum);
+        counter("cripto_key_updates_total", null, "Atualizações de chave (catraca de chaves) recebidas no meio das sessões.", keyUpdates::sum);
+        counter("cripto_session_handoffs_total", "result=\"attached\"", "Sessões transferidas para a porta de dados, por resultado.", handoffsAttached::sum);
+        counter("cripto_session_handoffs_total", "result=\"rejected\"", "Sessões transferidas para a porta de dados, por resultado.", handoffsRejected::sum);
+        counter("cripto_session_handoffs_total", "result=\"expired\"", "Sessões transferidas para a porta de dados, por resultado.", handoffsExpired::sum);
+        counter("cripto_files_received_total", null, "Arquivos recebidos e autenticados.", filesReceived::sum);
+        counter("cripto_bytes_received_total", null, "Bytes criptografados recebidos em mensagens e arquivos.", bytesReceived::sum);
+        counter("cripto_bytes_decrypted_total", null, "Bytes descriptografados de mensagens e arquivos.", bytesDecrypted::sum);
+        counter("cripto_decryption_failures_total", null, "Mensagens e arquivos que falharam na descriptografia.", decryptionFailures::sum);
+        summary("cripto_handshake_seconds", "Tempo desde a conexão até a sessão estabelecida (troca de chaves ou retomada).", handshakeTime);
+        summary("cripto_key_agreement_seconds", "Tempo do acordo de chaves e da derivação da chave da sessão.", keyAgreementTime);
+    }
+
+    // Tempo registrado por várias threads em um histograma compartilhado
+    private static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        synchronized void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        synchronized LatencyHistogram snapshot() {
+            LatencyHistogram copy = new LatencyHistogram();
+            copy.merge(histogram);
+            return copy;
+        }
+    }
+
+    private static final class Metric {
+        final String name;
+        final String labels;
+        final String help;
+        final String type;
+        final LongSupplier value;
+        final Timer timer;
+
+        Metric(String name, String labels, String help, String type, LongSupplier value, Timer timer) {
+            this.name = name;
+            this.labels = labels;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+            this.timer = timer;
+        }
+
+        // Nome do atributo JMX: o nome da métrica seguido do valor do rótulo, por exemplo cripto_handshakes_total_full
+        String attributeName() {
+            return labels == null ? name : name + "_" + labels.substring(labels.indexOf('"') + 1, labels.lastIndexOf('"'));
+        }
+    }
+
+    /*
+        Registra um contador ou medidor lido de outro objeto (por exemplo os pools de chaves e o cache de sessões). Registrar de novo o mesmo
+        nome e rótulo substitui a métrica anterior, o que acontece quando o motor ou os pools do servidor são recriados.
+    */
+    public synchronized void counter(String name, String labels, String help, LongSupplier value) {
+        metrics.put(key(name, labels), new Metric(name, labels, help, COUNTER, value, null));
+    }
+
+    public synchronized void gauge(String name, String labels, String help, LongSupplier value) {
+        metrics.put(key(name, labels), new Metric(name, labels, help, GAUGE, value, null));
+    }
+
+    // Retira uma métrica registrada, quando o objeto de onde ela era lida deixa de existir
+    public synchronized void remove(String name, String labels) {
+        metrics.remove(key(name, labels));
+    }
+
+    private synchronized void summary(String name, String help, Timer timer) {
+        metrics.put(key(name, null), new Metric(name, null, help, SUMMARY, null, timer));
+    }
+
+    private static String key(String name, String labels) {
+        return labels == null ? name : name + "{" + labels + "}";
+    }
+
+    private synchronized List<Metric> list() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    // Eventos registrados pelo ServerEngine e pelo ClientHandler
+
+    public void connectionAccepted() {
+        connectionsAccepted.increment();
+    }
+
+    public void communicationError() {
+        communicationErrors.increment();
+    }
+
+    // Conexão recusada pelo limite de conexões por endereço de origem
+    public void connectionRateLimited() {
+        rateLimitedConnections.increment();
+    }
+
+    // Conexão recusada com todas as vagas do servidor ocupadas
+    public void connectionLimitReached() {
+        connectionLimitRejections.increment();
+    }
+
+    // Troca de chaves recusada por falta de vaga dentro do tempo de espera
+    public void handshakeShed() {
+        shedHandshakes.increment();
+    }
+
+    public void handshakeTimedOut() {
+        handshakeTimeouts.increment();
+    }
+
+    public void sessionTimedOut() {
+        sessionTimeouts.increment();
+    }
+
+    public void sessionStarted(boolean resumed, long handshakeNanos) {
+        activeSessions.increment();
+        (resumed ? resumedHandshakes : fullHandshakes).increment();
+        handshakeTime.record(handshakeNanos);
+    }
+
+    public void sessionEnded() {
+        activeSessions.decrement();
+    }
+
+    public void keyAgreement(long nanos) {
+        keyAgreementTime.record(nanos);
+    }
+
+    public void messageReceived(int encryptedLength, int decryptedLength) {
+        messagesReceived.increment();
+        bytesReceived.add(encryptedLength);
+        bytesDecrypted.add(decryptedLength);
+    }
+
+    public void acknowledgementSent() {
+        acknowledgementsSent.increment();
+    }
+
+    public void keyUpdated() {
+        keyUpdates.increment();
+    }
+
+    // Conexão de dados que apresentou a ficha de uma sessão estabelecida
+    public void handoffAttached() {
+        handoffsAttached.increment();
+    }
+
+    // Conexão de dados recusada por uma ficha desconhecida, já usada ou vencida
+    public void handoffRejected() {
+        handoffsRejected.increment();
+    }
+
+    // Sessão encerrada porque o cliente não se conectou à porta de dados dentro do prazo da ficha
+    public void handoffExpired() {
+        handoffsExpired.increment();
+    }
+
+    public void fileChunkReceived(int encryptedLength, int decryptedLength) {
+        bytesReceived.add(encryptedLength);
+        bytesDecrypted.add(decryptedLength);
+    }
+
+    public void fileReceived() {
+        filesReceived.increment();
+    }
+
+    public void decryptionFailed() {
+        decryptionFailures.increment();
+    }
+
+    // Valores atuais de todas as métricas, pelo nome do atributo JMX; os tempos são resumidos em quantidade, média e percentis (ms)
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Metric metric : list()) {
+            if (metric.timer == null) {
+                values.put(metric.attributeName(), metric.value.getAsLong());
+                continue;
+            }
+            LatencyHistogram histogram = metric.timer.snapshot();
+            values.put(metric.name + "_count", histogram.getCount());
+            values.put(metric.name + "_mean_ms", histogram.getMean() / 1e6);
+            values.put(metric.name + "_p50_ms", histogram.percentile(50) / 1e6);
+            values.put(metric.name + "_p99_ms", histogram.percentile(99) / 1e6);
+            values.put(metric.name + "_p999_ms", histogram.percentile(99.9) / 1e6);
+            values.put(metric.name + "_max_ms", histogram.getMax() / 1e6);
+        }
+        return values;
+    }
+
+    // Métricas no formato de texto do Prometheus (versão 0.0.4), agrupadas pelo nome
+    public String toPrometheus() {
+        Map<String, List<Metric>> families = new LinkedHashMap<>();
+        for (Metric metric : list())
+            families.computeIfAbsent(metric.name, name -> new ArrayList<>()).add(metric);
+
+        StringBuilder text = new StringBuilder();
+        for (List<Metric> family : families.values()) {
+            Metric first = family.get(0);
+            text.append("# HELP ").append(first.name).append(' ').append(first.help).append('\n');
+            text.append("# TYPE ").append(first.name).append(' ').append(first.type).append('\n');
+
+            for (Metric metric : family) {
+                if (metric.timer == null) {
+                    text.append(key(metric.name, metric.labels)).append(' ').append(metric.value.getAsLong()).append('\n');
+                    continue;
+                }
+                LatencyHistogram histogram = metric.timer.snapshot();
+                for (double quantile : QUANTILES) {
+                    text.append(metric.name).append("{quantile=\"").append(quantile).append("\"} ")
+                            .append(seconds(histogram.percentile(quantile * 100))).append('\n');
+                }
+                text.append(metric.name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+                text.append(metric.name).append("_count ").append(histogram.getCount()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // Resumo para o console do servidor
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Métricas do servidor:");
+        for (Map.Entry<String, Number> entry : snapshot().entrySet())
+            text.append(System.lineSeparator()).append("  ").append(entry.getKey()).append(" = ").append(format(entry.getValue()));
+        return text.toString();
+    }
+
+    private static String format(Number value) {
+        return value instanceof Double ? String.format("%.3f", value.doubleValue()) : value.toString();
+    }
+
+    // Registra as métricas no servidor de MBeans da JVM, caso ainda não estejam registradas
+    public synchronized void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+    }
+
+    // Métodos do DynamicMBean: cada métrica é um atributo somente leitura
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException("Métrica desconhecida: " + attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute))
+                list.add(new Attribute(attribute, values.get(attribute)));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("As métricas são somente leitura: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Métricas do servidor", attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
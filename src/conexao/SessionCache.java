@@ -0,0 +1,142 @@
+package conexao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    A classe SessionCache guarda, no servidor, os bilhetes de retomada de sessão (classe SessionTicket) entregues aos clientes.
+
+    1- O cache tem um limite de bilhetes. Quando o limite é atingido, o bilhete usado há mais tempo é descartado (LRU).
+    2- Cada bilhete vale apenas durante o tempo de vida (TTL) configurado. Bilhetes vencidos são descartados quando encontrados.
+    3- O cache é dividido em faixas (stripes), cada uma com o seu próprio bloqueio, para que várias conexões possam consultá-lo ao mesmo
+       tempo sem disputar um único bloqueio. O bilhete é distribuído entre as faixas pelo seu identificador.
+    4- Os contadores de acertos, falhas, descartes por limite e descartes por vencimento permitem acompanhar a taxa de acerto e dimensionar
+       o cache.
+*/
+public class SessionCache {
+    private final Stripe[] stripes;
+    private final long ttlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public SessionCache(int maxEntries, long ttlMillis, int stripeCount) {
+        if (maxEntries < 1 || ttlMillis < 1 || stripeCount < 1)
+            throw new IllegalArgumentException("O tamanho, o tempo de vida e o número de faixas do cache devem ser maiores que zero.");
+
+        this.ttlMillis = ttlMillis;
+        this.stripes = new Stripe[stripeCount];
+        int stripeCapacity = Math.max(1, (maxEntries + stripeCount - 1) / stripeCount);
+        for (int i = 0; i < stripeCount; i++)
+            stripes[i] = new Stripe(stripeCapacity);
+    }
+
+    // Faixa do cache: um LinkedHashMap em ordem de acesso, que descarta a entrada usada há mais tempo quando passa do limite
+    private final class Stripe extends LinkedHashMap<String, SessionTicket> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SessionTicket> eldest) {
+            if (eldest.getValue().isExpired(System.currentTimeMillis())) {
+                expirations.increment();
+                return true;
+            }
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    // Tempo de vida dos bilhetes, usado para calcular o vencimento de um bilhete novo
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    // Guarda um bilhete no cache
+    public void put(SessionTicket ticket) {
+        String key = SessionTicket.key(ticket.getId());
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.put(key, ticket);
+        }
+    }
+
+    /*
+        Retira um bilhete do cache. O bilhete é removido mesmo quando encontrado, porque cada bilhete só pode ser usado uma vez. Retorna null
+        (falha) se o bilhete não existir ou estiver vencido.
+    */
+    public SessionTicket take(byte[] ticketId) {
+        String key = SessionTicket.key(ticketId);
+        Stripe stripe = stripeFor(key);
+        SessionTicket ticket;
+        synchronized (stripe) {
+            ticket = stripe.remove(key);
+        }
+
+        if (ticket != null && ticket.isExpired(System.currentTimeMillis())) {
+            expirations.increment();
+            ticket = null;
+        }
+
+        if (ticket != null)
+            hits.increment();
+        else
+            misses.increment();
+        return ticket;
+    }
+
+    // Quantidade de bilhetes guardados neste momento
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    // Fração das tentativas de retomada que encontraram o bilhete no cache
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Cache de sessões: %d bilhetes, taxa de acerto %.1f%% (%d acertos, %d falhas), %d descartes por limite, %d por vencimento",
+                size(), getHitRate() * 100, getHits(), getMisses(), getEvictions(), getExpirations());
+    }
+}
@@ -0,0 +1,150 @@
+package conexao;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    A classe SessionHandoff transfere as sessões da porta de entrada do servidor para a porta de dados.
+
+    Antes, o servidor pedia ao cliente uma porta de entrada e respondia "Porta de comunicação: N", mas a sessão inteira continuava na
+    conexão aceita pela porta do servidor. Com a porta de dados configurada, a porta do servidor só faz a troca de chaves (ou a retomada):
+
+    1- Junto com o CONFIG, o servidor entrega ao cliente que aceita o canal de dados o quadro HANDOFF, com a porta de dados e uma ficha
+       aleatória de uso único (issue).
+    2- Ao terminar a troca de chaves, a thread da conexão de entrada registra a sessão estabelecida com a ficha (offer) e é liberada.
+    3- O cliente se conecta à porta de dados e envia a ficha no quadro ATTACH, seguido das mensagens da sessão, sem esperar resposta. A
+       thread que aceitou a conexão de dados retira a sessão da ficha (take) e continua a sessão nela.
+
+    Como o cliente envia o ATTACH assim que termina a sua parte da troca de chaves, ele pode chegar antes de o servidor terminar a dele;
+    take() então espera a sessão ser registrada até o fim do prazo da ficha. Uma ficha não usada dentro do prazo é descartada e a sessão
+    registrada com ela é encerrada. A ficha não substitui a chave: uma conexão de dados com a ficha de outro cliente não consegue
+    criptografar nem descriptografar as mensagens da sessão.
+*/
+public class SessionHandoff {
+    // Tamanho da ficha de transferência, em bytes
+    public static final int TOKEN_LENGTH = 16;
+
+    private final int port;
+    private final long timeoutMillis;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor expirations;
+
+    /*
+        port: porta de dados informada aos clientes no quadro HANDOFF.
+        timeoutMillis: prazo desde a entrega da ficha até a conexão de dados, que cobre a troca de chaves e a conexão do cliente.
+    */
+    public SessionHandoff(int port, long timeoutMillis) {
+        if (port < 1 || port > 65535)
+            throw new IllegalArgumentException("Porta de dados inválida: " + port);
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("O prazo da transferência de sessão deve ser maior que zero.");
+
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+
+        // Uma única thread descarta as fichas vencidas; as fichas usadas são retiradas da fila na hora
+        this.expirations = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "servidor-transferencias");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expirations.setRemoveOnCancelPolicy(true);
+    }
+
+    /*
+        Ficha de uma sessão em transferência: a sessão, registrada quando a troca de chaves termina, e o seu prazo. A ficha continua
+        registrada enquanto a conexão de dados espera pela sessão; claimed garante que ela seja retirada uma única vez, pela conexão de
+        dados ou pelo vencimento do prazo.
+    */
+    private static final class Pending {
+        final CompletableFuture<ClientHandler> session = new CompletableFuture<>();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final long deadline;
+        ScheduledFuture<?> expiration;
+
+        Pending(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    // Cria uma ficha nova, válida até o fim do prazo, para a sessão que está sendo estabelecida na porta de entrada
+    public byte[] issue() {
+        byte[] token = SessionTicket.random(TOKEN_LENGTH);
+        String key = SessionTicket.key(token);
+        Pending entry = new Pending(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        pending.put(key, entry);
+        entry.expiration = expirations.schedule(() -> expire(key, entry), timeoutMillis, TimeUnit.MILLISECONDS);
+        return token;
+    }
+
+    /*
+        Registra a sessão estabelecida com a ficha entregue ao cliente. Retorna false se a ficha já venceu ou se a conexão de dados desistiu
+        de esperar; nesse caso a sessão não foi transferida e deve ser encerrada por quem a estabeleceu.
+    */
+    public boolean offer(byte[] token, ClientHandler session) {
+        Pending entry = pending.get(SessionTicket.key(token));
+        return entry != null && entry.session.complete(session);
+    }
+
+    // Descarta a ficha de uma troca de chaves que falhou; a conexão de dados que estiver esperando por ela é recusada
+    public void cancel(byte[] token) {
+        Pending entry = pending.remove(SessionTicket.key(token));
+        if (entry != null) {
+            entry.expiration.cancel(false);
+            entry.session.cancel(false);
+        }
+    }
+
+    /*
+        Retira a sessão da ficha apresentada na conexão de dados, esperando a troca de chaves terminar até o fim do prazo da ficha. Retorna
+        null se a ficha for desconhecida, já tiver sido usada, tiver vencido ou se a troca de chaves falhar.
+    */
+    public ClientHandler take(byte[] token) throws InterruptedException {
+        String key = SessionTicket.key(token);
+        Pending entry = pending.get(key);
+        if (entry == null || !entry.claimed.compareAndSet(false, true))
+            return null;
+
+        try {
+            return entry.session.get(Math.max(0, entry.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // A sessão ainda pode ter sido registrada entre o fim da espera e o cancelamento
+            return entry.session.cancel(false) ? null : entry.session.join();
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        } finally {
+            pending.remove(key, entry);
+            entry.expiration.cancel(false);
+        }
+    }
+
+    // Descarta uma ficha vencida; se a sessão já tinha sido registrada com ela, o cliente não se conectou à porta de dados a tempo
+    private void expire(String key, Pending entry) {
+        if (!entry.claimed.compareAndSet(false, true))
+            return;
+        pending.remove(key, entry);
+        if (!entry.session.cancel(false))
+            entry.session.join().abandon();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    // Fichas entregues aguardando a conexão de dados
+    public int getPendingHandoffs() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,105 @@
+package conexao;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKey;
+
+import auxiliar.CipherSuite;
+import auxiliar.Hkdf;
+
+/*
+    A classe SessionTicket representa um bilhete de retomada de sessão.
+
+    Depois de uma troca de chaves completa, o servidor entrega ao cliente um identificador aleatório (o bilhete) e os dois lados guardam um
+    segredo de retomada derivado do segredo compartilhado. Em uma nova conexão, o cliente apresenta o bilhete e o servidor, se ainda o tiver
+    no SessionCache, retoma a sessão em uma única ida e volta, sem gerar pares de chaves e sem o acordo de chaves:
+
+        1- Cliente  -> RESUME: bilhete e um nonce aleatório do cliente.
+        2- Servidor -> RESUME_ACCEPTED: nonce aleatório do servidor e um novo bilhete.
+
+    A chave da nova sessão e o segredo do próximo bilhete são derivados com HKDF do segredo de retomada e dos dois nonces. Cada bilhete é
+    usado uma única vez: o servidor o remove do cache na retomada e entrega um novo.
+*/
+public class SessionTicket {
+    public static final int ID_LENGTH = 16;
+    public static final int NONCE_LENGTH = 16;
+    public static final int SECRET_LENGTH = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] id;
+    private final byte[] resumptionSecret;
+    private final CipherSuite cipherSuite;
+    private final String keyExchangeName;
+    private final long expiresAtMillis;
+
+    public SessionTicket(byte[] id, byte[] resumptionSecret, CipherSuite cipherSuite, String keyExchangeName, long expiresAtMillis) {
+        this.id = id;
+        this.resumptionSecret = resumptionSecret;
+        this.cipherSuite = cipherSuite;
+        this.keyExchangeName = keyExchangeName;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    // Gera um identificador ou nonce aleatório
+    public static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    // Segredo de retomada derivado do segredo compartilhado bruto de uma troca de chaves completa
+    public static byte[] initialSecret(byte[] rawSecret) throws GeneralSecurityException {
+        return Hkdf.derive(rawSecret, null, label("retomada"), SECRET_LENGTH);
+    }
+
+    // Chave da sessão retomada, derivada do segredo de retomada e dos nonces do cliente e do servidor
+    public SecretKey resumedKey(byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        byte[] keyBytes = Hkdf.derive(resumptionSecret, concat(clientNonce, serverNonce), label("sessao " + cipherSuite.getName()), cipherSuite.getKeyLength());
+        return cipherSuite.keyFromBytes(keyBytes);
+    }
+
+    // Segredo de retomada do próximo bilhete, entregue junto com a sessão retomada
+    public byte[] nextSecret(byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException {
+        return Hkdf.derive(resumptionSecret, concat(clientNonce, serverNonce), label("retomada"), SECRET_LENGTH);
+    }
+
+    private static byte[] label(String label) {
+        return ("Criptografia-e-Redes " + label).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    // Identificador em texto, usado como chave no SessionCache
+    public static String key(byte[] id) {
+        return Base64.getEncoder().encodeToString(id);
+    }
+
+    public byte[] getId() {
+        return id;
+    }
+
+    public CipherSuite getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public String getKeyExchangeName() {
+        return keyExchangeName;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+}
@@ -1,35 +1,40 @@
 package conexao;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.security.KeyFactory;
-import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Scanner;
 
-import javax.crypto.SecretKey;
-
-import auxiliar.DiffieHellmanDES;
 import auxiliar.ClearConsole;
 
 /*
     O código a seguir é um cliente TCP em Java que se conecta a um servidor remoto e realiza uma troca de chaves Diffie-Hellman para criptografar e enviar mensagens ao servidor.
 
     1- O programa solicita ao usuário o endereço do servidor, a porta do servidor e a mensagem a ser criptografada.
-    2- Um loop permite que o usuário execute várias ações, como realizar a conexão, trocar o endereço do servidor, trocar a porta do servidor, alterar a mensagem ou cancelar a conexão.
-    3- O programa cria um socket para se conectar ao servidor usando o endereço e a porta fornecidos pelo usuário.
-    4- Objetos BufferedReader e PrintWriter são usados para ler e escrever dados no socket.
+    2- Um loop permite que o usuário execute várias ações, como realizar a conexão, trocar o endereço do servidor, trocar a porta do servidor, alterar a mensagem,
+       cancelar a conexão ou enviar um arquivo.
+    3- O programa cria uma sessão (ClientSession) que se conecta ao servidor usando o endereço e a porta fornecidos pelo usuário.
+    4- Um objeto FrameChannel é usado pela sessão para ler e escrever quadros binários no socket.
     5- O programa recebe solicitações e mensagens do servidor, realiza a troca de chaves Diffie-Hellman, gera o segredo compartilhado e criptografa a mensagem usando esse segredo.
     6- A mensagem criptografada é enviada ao servidor, e a resposta do servidor é exibida.
+       A sessão continua aberta e o usuário pode enviar novas mensagens com o mesmo segredo compartilhado, até enviar uma mensagem vazia.
     7- O loop continua até que o usuário decida cancelar a conexão.
     8- O programa trata possíveis exceções e exibe mensagens de erro se ocorrerem.
+
+    Modo de geração de carga (classe LoadGenerator), sem o menu e sem leitura do teclado:
+        java conexao.TCPClient --carga <endereço> <porta> [--conexoes=N] [--mensagens=N] [--tamanho=bytes] [--duracao=segundos] [--janela=N]
+            [--atualizar-chave=N] [--sem-retomada] [--sem-canal-dados]
 */
 public class TCPClient {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--carga")) {
+            runLoad(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         try {
             ClearConsole.clear();
             Scanner input = new Scanner(System.in);
@@ -51,10 +56,12 @@ public class TCPClient {
                     "\n3- Trocar porta servidor;" + 
                     "\n4- Alterar mensagem;" + 
                     "\n5- Cancelar conexão;" +
+                    "\n6- Enviar arquivo;" +
                     "\n> "
                 );
                 int option = input.nextInt();
                 ClearConsole.clear();
+                Path fileToSend = null;
             
                 switch(option){
                     case 1:
@@ -76,83 +83,108 @@ public class TCPClient {
                     case 5:
                         input.close();
                         return;
+                    case 6:
+                        input.nextLine();
+                        System.out.print("Caminho do arquivo que será criptografado e enviado: ");
+                        fileToSend = Paths.get(input.nextLine());
+                        if (!Files.isRegularFile(fileToSend)) {
+                            System.out.println("ERRO! O arquivo " + fileToSend + " não existe.");
+                            continue;
+                        }
+                        break;
                     default:
                         System.out.println("ERRO! A opção inserida não existe. Tente novamente:");
                         continue;
                 }
 
-                // Cria o socket do cliente e se conecta ao servidor
-                Socket socket = new Socket(serverAddress, serverPort);
-                System.out.println("Conectado ao servidor " + serverAddress + ":" + serverPort);
-
-                /*
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream())): Cria um objeto BufferedReader para ler dados
-                    do servidor através do fluxo de entrada do socket.
-                    PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true): Cria um objeto PrintWriter para escrever dados
-                    para o servidor através do fluxo de saída do socket.
-                */
-                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-
-                // Recebe a solicitação da porta de entrada do servidor
-                String portRequest = reader.readLine();
-                System.out.print(portRequest);
-
-                // Lê a porta de entrada digitada pelo usuário
-                int entryPort = input.nextInt(); 
-                input.nextLine();// Limpando buffer
-                writer.println(entryPort);// Envia a porta para o Servidor
-
-                // Recebe a mensagem de configuração do servidor
-                String configMessage = reader.readLine();
+                // Cria a sessão, que abre o socket do cliente e se conecta ao servidor
+                ClientSession session = new ClientSession(serverAddress, serverPort);
+                String configMessage;
+                try {
+                    String portRequest = session.connect();
+                    System.out.println("Conectado ao servidor " + serverAddress + ":" + serverPort);
+
+                    // Recebe a solicitação da porta de entrada do servidor
+                    System.out.print(portRequest);
+
+                    // Lê a porta de entrada digitada pelo usuário
+                    int entryPort = input.nextInt(); 
+                    input.nextLine();// Limpando buffer
+
+                    // Envia a porta ao servidor e realiza a troca de chaves uma única vez para toda a sessão
+                    configMessage = session.handshake(entryPort);
+                } catch (ServerBusyException e) {
+                    // O servidor sobrecarregado recusa a conexão (quadro BUSY) antes da troca de chaves; o usuário pode tentar de novo
+                    System.out.println("\nERRO! " + e.getMessage());
+                    session.close();
+                    continue;
+                }
                 System.out.println("Mensagem de configuração recebida: " + configMessage);
+                System.out.println("Algoritmo de troca de chaves: " + session.getKeyExchangeName());
+                System.out.println("Cifra: " + session.getCipherSuite().getName());
+                if (session.isResumed()) {
+                    System.out.println("Sessão retomada a partir do bilhete da sessão anterior, sem nova troca de chaves.");
+                } else {
+                    System.out.println("Chave pública do servidor recebida.");
+                    System.out.println("Chave pública do cliente enviada ao servidor.");
+                    System.out.println("Segredo compartilhado gerado.");
+                }
 
-                /*
-                    String publicKeyString = reader.readLine(): Lê a chave pública do servidor recebida como uma string codificada.
-                    byte[] publicKeyBytes = Base64.getDecoder().decode(publicKeyString): Decodifica a string da chave pública em um array de bytes.
-                    KeyFactory keyFactory = KeyFactory.getInstance("DiffieHellman"): Cria uma instância da classe KeyFactory para a geração da chave pública.
-                    PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes)): Gera a chave pública do servidor a partir do array de bytes decodificado.
-                */
-                String publicKeyString = reader.readLine();
-                byte[] publicKeyBytes = Base64.getDecoder().decode(publicKeyString);
-                KeyFactory keyFactory = KeyFactory.getInstance("DiffieHellman");
-                PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
-                System.out.println("Chave pública do servidor recebida.");
+                // No envio de arquivo, o arquivo é criptografado e enviado em blocos, sem ser carregado inteiro na memória
+                if (fileToSend != null) {
+                    System.out.println("Enviando o arquivo " + fileToSend + " (" + Files.size(fileToSend) + " bytes)...");
+                    try (session) {
+                        String response = session.sendFile(fileToSend);
+                        System.out.println("Resposta do servidor: " + response);
+                    } catch (IOException e) {
+                        // Arquivo recusado pelo servidor (quadro ERROR) ou conexão interrompida: a sessão é encerrada e o menu volta
+                        System.out.println("\nERRO! " + e.getMessage());
+                    }
+                    System.out.println("Sessão encerrada.");
+                    continue;
+                }
 
                 /*
-                    PublicKey clientPublicKey = diffieHellman.getPublicKey(): Obtém a chave pública do cliente gerada pelo objeto diffieHellman.
-                    String clientPublicKeyString = Base64.getEncoder().encodeToString(clientPublicKey.getEncoded()): Codifica a chave pública do
-                    cliente em uma string usando a codificação Base64.
+                    A sessão fica aberta até o usuário enviar uma mensagem vazia. Todas as mensagens são criptografadas com o mesmo segredo
+                    compartilhado, sem uma nova conexão ou uma nova troca de chaves por mensagem.
                 */
-                DiffieHellmanDES diffieHellman = new DiffieHellmanDES();
-                PublicKey clientPublicKey = diffieHellman.getPublicKey();
-                String clientPublicKeyString = Base64.getEncoder().encodeToString(clientPublicKey.getEncoded());
-
-                writer.println(clientPublicKeyString);// Enviando chave pública do cliente para o servidor
-                System.out.println("Chave pública do cliente enviada ao servidor.");
-
-                // SecretKey sharedSecret = diffieHellman.generateSharedSecret(publicKey): Gera o segredo compartilhado entre o cliente e o servidor usando a chave pública do servidor.
-                SecretKey sharedSecret = diffieHellman.generateSharedSecret(publicKey);
-                System.out.println("Segredo compartilhado gerado.");
-
-                // Criptografa a mensagem usando o segredo compartilhado
-                String encryptedMessage = diffieHellman.encryptMessage(message, sharedSecret);
-                System.out.println("Mensagem criptografada: ");
-                System.out.println("\n \" " + encryptedMessage + " \" \n");
-
-                // Envia a mensagem criptografada ao servidor
-                writer.println(encryptedMessage);
-                System.out.println("Mensagem enviada ao servidor.");
-
-                // Recebe a resposta do servidor
-                String response = reader.readLine();
-                System.out.println("Resposta do servidor: " + response);
+                String sessionMessage = message;
+                while (!sessionMessage.isEmpty()) {
+                    // Criptografa a mensagem usando o segredo compartilhado
+                    byte[] encryptedMessage = session.encrypt(sessionMessage);
+                    System.out.println("Mensagem criptografada (" + encryptedMessage.length + " bytes): ");
+                    System.out.println("\n \" " + Base64.getEncoder().encodeToString(encryptedMessage) + " \" \n");
+
+                    // Envia a mensagem criptografada ao servidor e recebe a resposta
+                    String response = session.sendEncrypted(encryptedMessage);
+                    System.out.println("Mensagem enviada ao servidor.");
+                    System.out.println("Resposta do servidor: " + response);
+
+                    System.out.print("\nPróxima mensagem (vazio para encerrar a sessão): ");
+                    sessionMessage = input.nextLine();
+                }
 
-                // Fecha a conexão
-                socket.close();
+                // Encerra a sessão e fecha a conexão
+                session.close();
+                System.out.println("Sessão encerrada.");
             }while(true);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    // Executa o gerador de carga com os argumentos da linha de comando e exibe o resultado
+    private static void runLoad(String[] args) {
+        try {
+            LoadGenerator generator = LoadGenerator.fromArgs(args);
+            System.out.println("Gerando carga em " + args[0] + ":" + args[1] + "...");
+            System.out.println(generator.run());
+        } catch (IllegalArgumentException e) {
+            System.out.println("ERRO! " + e.getMessage());
+            System.out.println("Uso: java conexao.TCPClient --carga <endereço> <porta> [--conexoes=N] [--mensagens=N] [--tamanho=bytes] " +
+                    "[--duracao=segundos] [--janela=N] [--atualizar-chave=N] [--sem-retomada] [--sem-canal-dados]");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 }
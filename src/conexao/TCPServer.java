@@ -1,21 +1,12 @@
 package conexao;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.security.KeyFactory;
-import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
+import java.io.IOException;
+import java.util.Map;
 import java.util.Scanner;
 
-import javax.crypto.SecretKey;
-
-import auxiliar.DiffieHellmanDES;
 import auxiliar.ClearConsole;
+import auxiliar.KeyExchanges;
+import auxiliar.KeyPairPool;
 
 /*
     O código a seguir é a implementação de um servidor TCP em Java. Ele permite a comunicação com clientes por meio de sockets TCP/IP.
@@ -23,44 +14,107 @@ import auxiliar.ClearConsole;
     O código realiza as seguintes etapas:
 
     1- Inicialização e configuração do servidor:
+        - Lê as configurações do arquivo e da linha de comando (classe ServerConfig). Com a opção --daemon, o servidor é executado sem
+          menu pela classe ServerDaemon, até receber o sinal de encerramento.
         - Solicita ao usuário a porta do servidor.
-        - Cria um socket do servidor na porta fornecida.
+        - Inicia os pools de chaves, que geram em segundo plano os pares de cada algoritmo de troca de chaves.
+        - Cria o motor do servidor (ServerEngine) na porta fornecida.
     
     2- Loop principal do servidor:
-        - Exibe um menu para o usuário com opções: ativar o servidor, trocar a porta ou encerrar o servidor.
+        - Exibe um menu para o usuário com opções: ativar o servidor, trocar a porta, encerrar o servidor, alterar o limite de conexões,
+          exibir estatísticas e métricas, alterar as marcas dos pools de chaves, ativar o registro detalhado das sessões ou ativar o
+          endpoint de métricas.
         - Executa a ação correspondente à opção selecionada.
+        - O menu continua disponível enquanto o servidor atende os clientes em segundo plano.
     
-    3- Lógica de comunicação com o cliente:
-        - Aguarda a conexão de um cliente.
-        - Cria objetos de leitura e escrita para a comunicação com o cliente.
+    3- Lógica de comunicação com o cliente (classes ServerEngine e ClientHandler):
+        - Threads aceitadoras aguardam continuamente a conexão de clientes, cada uma com o seu pool de threads.
+        - Cada cliente é atendido por uma thread de um pool limitado, permitindo várias conexões simultâneas.
         - Solicita ao cliente uma porta de entrada.
-        - Envia uma mensagem de configuração ao cliente contendo a porta de entrada.
-        - Realiza a troca de chaves Diffie-Hellman com o cliente.
-        - Recebe uma mensagem criptografada do cliente, descriptografa-a e exibe a mensagem descriptografada.
-        - Verifica se a chave compartilhada é igual à chave compartilhada gerada a partir da chave pública do cliente.
-        - Envia uma mensagem de sucesso ou de chave diferente ao cliente.
-        - Fecha a conexão com o cliente.
-        - O servidor continua executando em um loop principal até que o usuário escolha encerrar o servidor.
+        - Envia uma mensagem de configuração ao cliente contendo a porta em que a sessão continua (a porta de dados, quando configurada).
+        - Negocia o algoritmo de troca de chaves (X25519, ECDH-P256 ou Diffie-Hellman clássico) e a cifra simétrica (AES-GCM,
+          ChaCha20-Poly1305 ou DES), e realiza a troca de chaves com o cliente.
+        - Deriva a chave da sessão do segredo compartilhado uma única vez; uma chave diferente da do cliente aparece como falha ao
+          descriptografar as mensagens.
+        - Recebe as mensagens criptografadas da sessão, descriptografa-as e exibe as mensagens descriptografadas.
+        - Envia uma mensagem de sucesso ou de chave diferente ao cliente para cada mensagem.
+        - Fecha a conexão com o cliente quando ele encerra a sessão.
+        - O servidor continua executando até que o usuário escolha encerrar o servidor.
 
     Esse código demonstra um exemplo básico de servidor TCP que utiliza troca de chaves Diffie-Hellman para estabelecer um segredo compartilhado
     e criptografar a comunicação com o cliente. 
 */
 public class TCPServer {
     public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.load(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("ERRO! " + e.getMessage());
+            System.out.println(ServerConfig.usage());
+            return;
+        }
+
+        // No modo daemon o servidor é configurado apenas pelo arquivo e pela linha de comando, sem menu
+        if (config.isDaemon()) {
+            try {
+                ServerDaemon.run(config);
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERRO! " + e.getMessage());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
         try {
             ClearConsole.clear();
             Scanner input = new Scanner(System.in);
-            System.out.print("Porta do servidor: ");
-            int serverPort = input.nextInt();
-            
-            // Cria o socket do servidor
-            ServerSocket serverSocket = new ServerSocket(serverPort);
+
+            // A porta configurada (porta, no arquivo ou na linha de comando) vale quando o usuário só pressiona Enter
+            int serverPort = config.getInt(ServerConfig.PORT);
+            System.out.print("Porta do servidor (Enter para " + serverPort + "): ");
+            String typedPort = input.nextLine().trim();
+            if (!typedPort.isEmpty())
+                serverPort = Integer.parseInt(typedPort);
+            int maxConnections = config.getInt(ServerConfig.MAX_CONNECTIONS);
+            long shutdownTimeoutMillis = config.getLong(ServerConfig.SHUTDOWN_TIMEOUT_MILLIS);
+
+            // Inicia os pools de chaves, que geram os pares de cada algoritmo de troca de chaves antes das conexões chegarem
+            int poolLowWatermark = config.getInt(ServerConfig.POOL_LOW_WATERMARK);
+            int poolHighWatermark = config.getInt(ServerConfig.POOL_HIGH_WATERMARK);
+            int poolGeneratorThreads = config.getInt(ServerConfig.POOL_GENERATOR_THREADS);
+            Map<String, KeyPairPool> keyPairPools = config.newKeyPairPools();
+            keyPairPools.values().forEach(KeyPairPool::start);
+
+            // Cria o cache de sessões, mantido mesmo quando o motor é recriado, para que os bilhetes já entregues continuem valendo
+            SessionCache sessionCache = config.newSessionCache();
+
+            /*
+                As métricas são publicadas no JMX desde o início. O endpoint HTTP do Prometheus é aberto já na inicialização quando
+                metricas.porta está configurada, como no modo daemon, e pode ser ativado ou desativado pelo menu.
+            */
+            ServerMetrics metrics = new ServerMetrics();
+            metrics.registerMBean();
+            MetricsEndpoint metricsEndpoint = null;
+            int metricsPort = config.getInt(ServerConfig.METRICS_PORT);
+            if (metricsPort > 0)
+                metricsEndpoint = startMetricsEndpoint(metrics, metricsPort);
+
+            // Cria o contexto com os recursos compartilhados pelas conexões, mantido quando o motor é recriado, e o motor do servidor
+            ServerContext context = config.newContext(keyPairPools, sessionCache, metrics);
+            ServerEngine engine = new ServerEngine(serverPort, maxConnections, context);
             
             do{
                 System.out.print(
                     "\n1- Ativar servidor" +
                     "\n2- Trocar porta" +
                     "\n3- Encerrar servidor" +
+                    "\n4- Alterar limite de conexões simultâneas (atual: " + maxConnections + ")" +
+                    "\n5- Exibir estatísticas" +
+                    "\n6- Alterar marcas dos pools de chaves (atual: " + poolLowWatermark + "/" + poolHighWatermark + ")" +
+                    "\n7- " + (context.isVerbose() ? "Desativar" : "Ativar") + " registro detalhado das sessões" +
+                    "\n8- " + (metricsEndpoint != null ? "Desativar endpoint de métricas (porta " + metricsEndpoint.getPort() + ")" : "Ativar endpoint de métricas") +
                     "\n> "
                 );
                 int option = input.nextInt();
@@ -68,115 +122,117 @@ public class TCPServer {
                 
                 switch(option){
                     case 1:
+                        if (engine.isRunning()) {
+                            System.out.println("O servidor já está ativo na porta " + serverPort + ".");
+                            continue;
+                        }
                         break;
                     case 2:
                         System.out.print("Porta do servidor: ");
                         serverPort = input.nextInt();
                         
-                        // Cria o socket do servidor
-                        serverSocket = new ServerSocket(serverPort);
+                        // Recria o motor do servidor na nova porta, reativando-o caso estivesse ativo
+                        boolean wasRunning = engine.isRunning();
+                        engine.shutdown(shutdownTimeoutMillis);
+                        engine = new ServerEngine(serverPort, maxConnections, context);
+                        if (!wasRunning)
+                            continue;
                         break;
                     case 3:
-                        serverSocket.close();
+                        engine.shutdown(shutdownTimeoutMillis);
+                        keyPairPools.values().forEach(KeyPairPool::shutdown);
+                        if (metricsEndpoint != null)
+                            metricsEndpoint.stop();
+                        metrics.unregisterMBean();
                         input.close();
                         return;
+                    case 4:
+                        System.out.print("Limite de conexões simultâneas: ");
+                        maxConnections = input.nextInt();
+                        if (maxConnections < 1) {
+                            System.out.println("ERRO! O limite deve ser maior que zero.");
+                            maxConnections = engine.getMaxConnections();
+                            continue;
+                        }
+
+                        // O novo limite vale para o próximo motor criado, reativando-o caso estivesse ativo
+                        boolean wasActive = engine.isRunning();
+                        engine.shutdown(shutdownTimeoutMillis);
+                        engine = new ServerEngine(serverPort, maxConnections, context);
+                        if (!wasActive)
+                            continue;
+                        break;
+                    case 5:
+                        System.out.println("Conexões ativas: " + engine.getActiveConnections() + " de " + maxConnections);
+                        keyPairPools.values().forEach(System.out::println);
+                        System.out.println(sessionCache);
+                        System.out.println(metrics);
+                        continue;
+                    case 6:
+                        System.out.print("Marca inferior dos pools (reabastece abaixo dela): ");
+                        int lowWatermark = input.nextInt();
+                        System.out.print("Marca superior dos pools (quantidade máxima de pares prontos): ");
+                        int highWatermark = input.nextInt();
+
+                        // Os novos pools passam a ser usados pelo próximo motor criado, reativando-o caso estivesse ativo
+                        Map<String, KeyPairPool> newPools;
+                        try {
+                            newPools = KeyExchanges.createPools(lowWatermark, highWatermark, poolGeneratorThreads);
+                        } catch (IllegalArgumentException e) {
+                            System.out.println("ERRO! " + e.getMessage());
+                            continue;
+                        }
+                        boolean wasServing = engine.isRunning();
+                        engine.shutdown(shutdownTimeoutMillis);
+                        keyPairPools.values().forEach(KeyPairPool::shutdown);
+                        keyPairPools = newPools;
+                        keyPairPools.values().forEach(KeyPairPool::start);
+                        context.setKeyPairPools(keyPairPools);
+                        poolLowWatermark = lowWatermark;
+                        poolHighWatermark = highWatermark;
+                        engine = new ServerEngine(serverPort, maxConnections, context);
+                        if (!wasServing)
+                            continue;
+                        break;
+                    case 7:
+                        // Vale para as próximas conexões; as sessões em andamento mantêm a opção com que começaram
+                        context.setVerbose(!context.isVerbose());
+                        System.out.println("Registro detalhado " + (context.isVerbose() ? "ativado." : "desativado."));
+                        continue;
+                    case 8:
+                        if (metricsEndpoint != null) {
+                            metricsEndpoint.stop();
+                            metricsEndpoint = null;
+                            System.out.println("Endpoint de métricas desativado.");
+                            continue;
+                        }
+                        System.out.print("Porta do endpoint de métricas: ");
+                        metricsEndpoint = startMetricsEndpoint(metrics, input.nextInt());
+                        continue;
                     default:
                         System.out.println("ERRO! Opção inserida não existe. Tente novamente:");
                         continue;
                 }
 
-                System.out.println("\nServidor aguardando conexão na porta " + serverPort + "...\n\n");
-
-                // Aguarda a conexão do cliente
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Cliente conectado: " + clientSocket.getInetAddress().getHostAddress());
-    
-                /*
-                    Dois objetos são criados: BufferedReader chamado reader e PrintWriter chamado writer. Esses objetos são usados para ler e escrever
-                    dados através da conexão com o cliente.
-
-                    O BufferedReader é inicializado com um InputStreamReader que recebe a entrada do cliente por meio do método clientSocket.getInputStream().
-                    O PrintWriter é inicializado com um OutputStreamWriter que envia a saída para o cliente por meio do método clientSocket.getOutputStream().
-                */
-                BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter writer = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
-    
-                // Solicita a porta de entrada ao cliente
-                writer.println("Digite a porta de entrada: ");
-                int entryPort = Integer.parseInt(reader.readLine());
-                System.out.println("Porta de entrada recebida: " + entryPort);
-    
-                // Gera a mensagem de configuração do servidor
-                String configMessage = "Porta de comunicação: " + entryPort;
-                writer.println(configMessage);
-                System.out.println("Mensagem de configuração enviada ao cliente: " + configMessage);
-    
-                /*
-                    Um objeto DiffieHellmanDES é criado para realizar a troca de chaves Diffie-Hellman.
-                    A chave pública é obtida chamando o método getPublicKey() no objeto diffieHellman.
-                    A chave pública é convertida em uma string codificada em Base64 usando Base64.getEncoder().encodeToString(publicKey.getEncoded()).
-                    A chave pública é enviada ao cliente usando writer.println(publicKeyString).
-                    A chave pública é exibida no console.
-                */
-                DiffieHellmanDES diffieHellman = new DiffieHellmanDES();
-                PublicKey publicKey = diffieHellman.getPublicKey();
-                String publicKeyString = Base64.getEncoder().encodeToString(publicKey.getEncoded());
-
-                writer.println(publicKeyString);// Enviando Chave pública para o cliente
-                System.out.println("Chave pública enviada ao cliente: ");
-                System.out.println("\n \" " + publicKeyString + " \" \n");
-    
-                /*
-                    O servidor lê a chave pública enviada pelo cliente usando reader.readLine().
-                    A chave pública recebida é decodificada de Base64 para um array de bytes usando Base64.getDecoder().decode(receivedPublicKeyString).
-                    Um objeto KeyFactory é criado, especificando o algoritmo "DiffieHellman", usando KeyFactory.getInstance("DiffieHellman").
-                    A chave pública recebida é reconstruída a partir dos bytes decodificados usando keyFactory.generatePublic(new X509EncodedKeySpec(receivedPublicKeyBytes))
-                    e armazenada na variável receivedPublicKey.
-                */
-                String receivedPublicKeyString = reader.readLine();
-                byte[] receivedPublicKeyBytes = Base64.getDecoder().decode(receivedPublicKeyString);
-                KeyFactory keyFactory = KeyFactory.getInstance("DiffieHellman");
-                PublicKey receivedPublicKey = keyFactory.generatePublic(new X509EncodedKeySpec(receivedPublicKeyBytes));
-    
-                /*
-                    O servidor gera o segredo compartilhado chamando o método generateSharedSecret(receivedPublicKey) no objeto diffieHellman.
-                    Uma mensagem indicando que o segredo compartilhado foi gerado e exibida no console.
-                */
-                SecretKey sharedSecret = diffieHellman.generateSharedSecret(receivedPublicKey);
-                System.out.println("Segredo compartilhado gerado.");
-    
-                // Recebe a mensagem do cliente
-                String encryptedMessage = reader.readLine();
-                System.out.println("Mensagem criptografada recebida: ");
-                System.out.println("\n \" " + encryptedMessage + " \" \n");
-    
-                // Descriptografa a mensagem
-                String decryptedMessage = diffieHellman.decryptMessage(encryptedMessage, sharedSecret);
-                System.out.println("Mensagem descriptografada: " + decryptedMessage);
-    
-                /*
-                    O servidor verifica se o segredo compartilhado é igual ao segredo compartilhado gerado a partir da chave pública recebida pelo cliente.
-                    Se forem iguais, uma mensagem de sucesso é enviada ao cliente usando writer.println("Mensagem recebida com sucesso!") e uma mensagem de
-                    sucesso é exibida no console.
-                    Caso contrário, uma mensagem indicando que a chave é diferente é enviada ao cliente usando writer.println("Chave diferente. Mensagem não enviada.")
-                    e uma mensagem correspondente é exibida no console.
-                */
-                if (sharedSecret.equals(diffieHellman.generateSharedSecret(receivedPublicKey))) {
-                    // Envia a mensagem de sucesso ao cliente
-                    writer.println("Mensagem recebida com sucesso!");
-                    System.out.println("Mensagem de sucesso enviada ao cliente.");
-                } else {
-                    // Envia a mensagem de chave diferente ao cliente
-                    writer.println("Chave diferente. Mensagem não enviada.");
-                    System.out.println("Mensagem de chave diferente enviada ao cliente.");
-                }
-    
-                // Fecha as conexão
-                clientSocket.close();
-
+                // Inicia a thread aceitadora, que atende os clientes em segundo plano enquanto o menu continua disponível
+                engine.start();
+                System.out.println("\nServidor aguardando conexões na porta " + serverPort + " (até " + maxConnections + " simultâneas)...\n\n");
             }while(true);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    // Abre o endpoint de métricas na porta informada; retorna null se a porta não puder ser aberta
+    private static MetricsEndpoint startMetricsEndpoint(ServerMetrics metrics, int port) {
+        MetricsEndpoint metricsEndpoint = new MetricsEndpoint(metrics, port);
+        try {
+            metricsEndpoint.start();
+            System.out.println("Métricas disponíveis em http://127.0.0.1:" + metricsEndpoint.getPort() + MetricsEndpoint.PATH);
+            return metricsEndpoint;
+        } catch (IOException e) {
+            System.out.println("ERRO! Não foi possível abrir o endpoint de métricas: " + e.getMessage());
+            return null;
+        }
+    }
 }